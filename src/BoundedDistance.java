@@ -0,0 +1,69 @@
+/**
+ * The result of Map.distancesWithin(): only the cells within a given radius from
+ * a start cell, each with its BFS distance. Entries are kept in BFS order
+ * (non decreasing distance), so the size is O(radius^2) regardless of the map size.
+ */
+public class BoundedDistance {
+    private final int _w, _h;
+    private final int _radius;
+    private final int[] _cells;
+    private final int[] _dist;
+
+    BoundedDistance(int w, int h, int radius, int[] cells, int[] dist) {
+        _w = w;
+        _h = h;
+        _radius = radius;
+        _cells = cells;
+        _dist = dist;
+    }
+
+    /**
+     * @return the radius this result was computed for.
+     */
+    public int getRadius() {
+        return _radius;
+    }
+
+    /**
+     * @return the number of cells within the radius (including the start cell).
+     */
+    public int size() {
+        return _cells.length;
+    }
+
+    /**
+     * @return the x coordinate of the i-th cell.
+     */
+    public int getX(int i) {
+        return _cells[i] / _h;
+    }
+
+    /**
+     * @return the y coordinate of the i-th cell.
+     */
+    public int getY(int i) {
+        return _cells[i] % _h;
+    }
+
+    /**
+     * @return the distance of the i-th cell from the start cell.
+     */
+    public int getDistance(int i) {
+        return _dist[i];
+    }
+
+    /**
+     * @param p a cell of the map.
+     * @return the distance from the start cell to p, or -1 if p is farther than the radius
+     * (or unreachable, or an obstacle).
+     */
+    public int distanceTo(Pixel2D p) {
+        if (p == null) return -1;
+        if (p.getX() < 0 || p.getY() < 0 || p.getX() >= _w || p.getY() >= _h) return -1;
+        int id = p.getX() * _h + p.getY();
+        for (int i = 0; i < _cells.length; i++) {
+            if (_cells[i] == id) return _dist[i];
+        }
+        return -1;
+    }
+}
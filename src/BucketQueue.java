@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/**
+ * A monotone bucket priority queue over small integer keys (Dial's algorithm).
+ * Keys are kept in a ring of span buckets, which is valid as long as every pushed key k
+ * satisfies lastKey() <= k < lastKey() + span - true for searches whose edge costs
+ * (or f-value increases) are bounded by span - 1.
+ * Entries live in int arrays which are reused between searches, so pushing does not
+ * allocate once the pool has grown to its working size. Ties are popped LIFO.
+ */
+final class BucketQueue {
+    private int[] _head = new int[0];
+    private int _span;
+    private int[] _cell = new int[64];
+    private int[] _next = new int[64];
+    private int _used, _size, _cur;
+
+    /**
+     * Empties the queue and prepares it for keys starting at firstKey.
+     * @param span the number of buckets (max key spread + 1).
+     */
+    void reset(int span, int firstKey) {
+        if (_head.length < span) _head = new int[span];
+        Arrays.fill(_head, 0, span, -1);
+        _span = span;
+        _used = _size = 0;
+        _cur = firstKey;
+    }
+
+    void push(int cell, int key) {
+        if (_used == _cell.length) {
+            _cell = Arrays.copyOf(_cell, _used * 2);
+            _next = Arrays.copyOf(_next, _used * 2);
+        }
+        int b = key % _span;
+        _cell[_used] = cell;
+        _next[_used] = _head[b];
+        _head[b] = _used;
+        _used++;
+        _size++;
+    }
+
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Removes and returns a cell with the smallest key (the key is then lastKey()).
+     */
+    int pop() {
+        int b = _cur % _span;
+        while (_head[b] == -1) {
+            _cur++;
+            b = _cur % _span;
+        }
+        int e = _head[b];
+        _head[b] = _next[e];
+        _size--;
+        return _cell[e];
+    }
+
+    /**
+     * @return the key of the last popped cell.
+     */
+    int lastKey() {
+        return _cur;
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+
+/**
+ * The cells of one color of a Map, kept current on every change of the map
+ * (see Map.colorIndex()) - so "how many dots are left", "is any left" and "where are they"
+ * never need a scan or a flood of the board.
+ *
+ * The cells are kept in a dense array with a cell -> slot table (O(1) add, remove and
+ * count, iteration by slot). On top of it a coarse grid of BUCKET*BUCKET buckets counts the
+ * cells per bucket, so nearestCandidate() only looks into the buckets around a point.
+ * A map without color indexes pays nothing for them.
+ */
+public class ColorIndex implements MapListener {
+    // side of a bucket of the coarse grid, in cells
+    static final int BUCKET = 8;
+
+    private final Map _map;
+    private final int _color;
+    private int[] _cells = new int[0];   // the member cells, in slots 0.._count-1
+    private int[] _slot = new int[0];    // cell -> slot, -1 if not a member
+    private int _count;
+    private int[] _buckets = new int[0]; // cells per bucket, bucket (bx,by) at bx*_bh+by
+    private int _bw, _bh;
+    private boolean _dirty = true;
+
+    ColorIndex(Map map, int color) {
+        _map = map;
+        _color = color;
+    }
+
+    /**
+     * @return the indexed color.
+     */
+    public int getColor() {
+        return _color;
+    }
+
+    /**
+     * @return the number of cells holding the color.
+     */
+    public int count() {
+        if (_dirty) rebuild();
+        return _count;
+    }
+
+    /**
+     * @return true iff at least one cell holds the color.
+     */
+    public boolean any() {
+        return count() > 0;
+    }
+
+    /**
+     * The members in slot order: cell(0)..cell(count()-1) are packed cell ids (see Map.cellOf()).
+     * Slots are only stable until the next change of the map.
+     */
+    public int cell(int slot) {
+        if (_dirty) rebuild();
+        if (slot < 0 || slot >= _count) throw new IndexOutOfBoundsException("slot " + slot + " of " + _count);
+        return _cells[slot];
+    }
+
+    /**
+     * @return true iff the packed cell holds the color.
+     */
+    public boolean contains(int cell) {
+        if (_dirty) rebuild();
+        return _slot[cell] >= 0;
+    }
+
+    /**
+     * A cell of the color which is nearest to (x,y) by Manhattan distance (around the wraps
+     * of a cyclic map) - a cheap candidate, walls are not taken into account.
+     * Only the buckets around (x,y) are visited: ring after ring, until no unseen bucket can
+     * hold a closer cell.
+     * @return a packed cell id, or -1 if no cell holds the color.
+     */
+    public int nearestCandidate(int x, int y) {
+        if (_dirty) rebuild();
+        if (_count == 0) return -1;
+        int w = _map.getWidth(), h = _map.getHeight();
+        boolean cyclic = _map.isCyclic();
+        // a ring of buckets at distance r is at least (r-1) of the narrowest buckets away
+        int narrowest = Math.min(Math.min(BUCKET, lastSide(w)), lastSide(h));
+        int bx = x / BUCKET, by = y / BUCKET;
+        int best = -1, bestDist = Integer.MAX_VALUE;
+        int maxRing = Math.max(_bw, _bh);
+
+        for (int r = 0; r <= maxRing; r++) {
+            if (r > 0 && (long) (r - 1) * narrowest >= bestDist) break;
+            for (int i = -r; i <= r; i++) {
+                for (int j = -r; j <= r; j++) {
+                    if (Math.max(Math.abs(i), Math.abs(j)) != r) continue;   // only the ring itself
+                    int cx = bx + i, cy = by + j;
+                    if (cyclic) {
+                        cx = Math.floorMod(cx, _bw);
+                        cy = Math.floorMod(cy, _bh);
+                    } else if (cx < 0 || cy < 0 || cx >= _bw || cy >= _bh) {
+                        continue;
+                    }
+                    if (_buckets[cx * _bh + cy] == 0) continue;
+
+                    // scan the bucket's cells
+                    int x1 = Math.min(w, (cx + 1) * BUCKET), y1 = Math.min(h, (cy + 1) * BUCKET);
+                    for (int px = cx * BUCKET; px < x1; px++) {
+                        for (int py = cy * BUCKET; py < y1; py++) {
+                            int c = px * h + py;
+                            if (_slot[c] < 0) continue;
+                            int d = axis(x, px, w, cyclic) + axis(y, py, h, cyclic);
+                            if (d < bestDist) {
+                                bestDist = d;
+                                best = c;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void cellChanged(int cell, int oldV, int newV) {
+        if (_dirty) return;
+        if (oldV == _color) remove(cell);
+        else if (newV == _color) add(cell);
+    }
+
+    @Override
+    public void mapChanged() {
+        _dirty = true;
+    }
+
+    private void rebuild() {
+        int[] cells = _map.cells();
+        int n = cells.length, h = _map.getHeight();
+        if (_slot.length != n) {
+            _slot = new int[n];
+            _cells = new int[16];
+        }
+        _bw = (_map.getWidth() + BUCKET - 1) / BUCKET;
+        _bh = (h + BUCKET - 1) / BUCKET;
+        if (_buckets.length != _bw * _bh) _buckets = new int[_bw * _bh];
+        else Arrays.fill(_buckets, 0);
+        Arrays.fill(_slot, -1);
+        _count = 0;
+        _dirty = false;
+        for (int c = 0; c < n; c++) {
+            if (cells[c] == _color) add(c);
+        }
+    }
+
+    private void add(int c) {
+        if (_count == _cells.length) _cells = Arrays.copyOf(_cells, Math.max(16, _count * 2));
+        _slot[c] = _count;
+        _cells[_count++] = c;
+        _buckets[bucket(c)]++;
+    }
+
+    // moves the last member into the freed slot
+    private void remove(int c) {
+        int s = _slot[c];
+        int last = _cells[--_count];
+        _cells[s] = last;
+        _slot[last] = s;
+        _slot[c] = -1;
+        _buckets[bucket(c)]--;
+    }
+
+    private int bucket(int c) {
+        int h = _map.getHeight();
+        int x = c / h;
+        return (x / BUCKET) * _bh + (c - x * h) / BUCKET;
+    }
+
+    // side of the last bucket along an axis of the given length
+    private static int lastSide(int len) {
+        int r = len % BUCKET;
+        return (r == 0) ? BUCKET : r;
+    }
+
+    private static int axis(int a, int b, int len, boolean cyclic) {
+        int d = Math.abs(a - b);
+        return cyclic ? Math.min(d, len - d) : d;
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColorIndexTest {
+
+    private static final int DOT = 3;
+
+    private static Set<Integer> scan(Map m, int color) {
+        Set<Integer> ans = new HashSet<>();
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                if (m.getPixel(x, y) == color) ans.add(m.cellOf(x, y));
+            }
+        }
+        return ans;
+    }
+
+    private static int manhattan(Map m, int x, int y, int cell) {
+        int dx = Math.abs(x - m.cellX(cell)), dy = Math.abs(y - m.cellY(cell));
+        if (m.isCyclic()) {
+            dx = Math.min(dx, m.getWidth() - dx);
+            dy = Math.min(dy, m.getHeight() - dy);
+        }
+        return dx + dy;
+    }
+
+    private static void assertMatchesScan(Map m, ColorIndex idx, Random r) {
+        Set<Integer> expected = scan(m, DOT);
+        assertEquals(expected.size(), idx.count());
+        assertEquals(!expected.isEmpty(), idx.any());
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < idx.count(); i++) seen.add(idx.cell(i));
+        assertEquals(expected, seen);
+
+        int x = r.nextInt(m.getWidth()), y = r.nextInt(m.getHeight());
+        int c = idx.nearestCandidate(x, y);
+        if (expected.isEmpty()) {
+            assertEquals(-1, c);
+            return;
+        }
+        assertTrue(idx.contains(c));
+        int best = Integer.MAX_VALUE;
+        for (int e : expected) best = Math.min(best, manhattan(m, x, y, e));
+        assertEquals(best, manhattan(m, x, y, c));
+    }
+
+    @Test
+    void followsSetPixelFillAndInit() {
+        Random r = new Random(20);
+        for (int round = 0; round < 20; round++) {
+            int w = 1 + r.nextInt(30), h = 1 + r.nextInt(25);
+            Map m = new Map(w, h, 0);
+            m.setCyclic(round % 2 == 0);
+            for (int i = 0; i < w * h / 10; i++) m.setPixel(r.nextInt(w), r.nextInt(h), DOT);
+            ColorIndex idx = m.colorIndex(DOT);
+            assertSame(idx, m.colorIndex(DOT));
+
+            for (int step = 0; step < 80; step++) {
+                m.setPixel(r.nextInt(w), r.nextInt(h), r.nextInt(3) == 0 ? DOT : r.nextInt(2));
+                assertMatchesScan(m, idx, r);
+            }
+            m.fill(new Index2D(0, 0), DOT);
+            assertMatchesScan(m, idx, r);
+            m.init(w + 3, h + 1, 0);
+            m.setPixel(w + 2, h, DOT);
+            assertMatchesScan(m, idx, r);
+        }
+    }
+
+    @Test
+    void dropColorIndex_stopsFollowing() {
+        Map m = new Map(10, 10, DOT);
+        ColorIndex idx = m.colorIndex(DOT);
+        assertEquals(100, idx.count());
+        m.dropColorIndex(DOT);
+        m.setPixel(0, 0, 0);
+        assertEquals(100, idx.count());
+        assertNotSame(idx, m.colorIndex(DOT));
+        assertEquals(99, m.colorIndex(DOT).count());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Connected components of the non-obstacle cells of a Map, for one obstacle color,
+ * kept as a union-find forest that follows the map's changes (see Map.isConnected()).
+ *
+ * A cell that opens up gets a fresh union-find node joined to its walkable neighbours,
+ * so reopening never merges with stale sets. A new obstacle can only split its component
+ * if its walkable 4-neighbours are not already joined through the 8 cells around it; only
+ * then is the index marked dirty, and rebuilt (O(w*h)) on the next query.
+ */
+final class ComponentIndex implements MapListener {
+    private final Map _map;
+    private final int _obsColor;
+    private int[] _node = new int[0];     // cell -> union-find node, -1 on obstacles
+    private int[] _parent = new int[0];
+    private int[] _size = new int[0];
+    private int _nodes;
+    private boolean _dirty = true;
+
+    ComponentIndex(Map map, int obsColor) {
+        _map = map;
+        _obsColor = obsColor;
+    }
+
+    int obsColor() {
+        return _obsColor;
+    }
+
+    /**
+     * @return true iff cells a and b are both walkable and in the same component.
+     */
+    boolean connected(int a, int b) {
+        if (_dirty) rebuild();
+        int na = _node[a], nb = _node[b];
+        return na >= 0 && nb >= 0 && find(na) == find(nb);
+    }
+
+    @Override
+    public void cellChanged(int cell, int oldV, int newV) {
+        if (_dirty) return;   // the rebuild will read the current cells anyway
+        boolean wasObs = oldV == _obsColor, isObs = newV == _obsColor;
+        if (wasObs == isObs) return;
+        if (isObs) close(cell);
+        else open(cell);
+    }
+
+    @Override
+    public void mapChanged() {
+        _dirty = true;
+    }
+
+    private void rebuild() {
+        int[] cells = _map.cells();
+        int n = cells.length;
+        if (_node.length != n) {
+            _node = new int[n];
+            _parent = new int[2 * n];
+            _size = new int[2 * n];
+        }
+        for (int c = 0; c < n; c++) {
+            if (cells[c] == _obsColor) {
+                _node[c] = -1;
+            } else {
+                _node[c] = c;
+                _parent[c] = c;
+                _size[c] = 1;
+            }
+        }
+        _nodes = n;
+
+        // joining every cell with its down (d=2) and right (d=3) neighbours covers all edges
+        int h = _map.getHeight();
+        for (int c = 0; c < n; c++) {
+            if (_node[c] < 0) continue;
+            int x = c / h, y = c - x * h;
+            for (int d = 2; d < 4; d++) {
+                int nb = _map.neighbour(c, x, y, d);
+                if (nb >= 0 && _node[nb] >= 0) union(c, nb);
+            }
+        }
+        _dirty = false;
+    }
+
+    private void open(int c) {
+        if (_nodes == _parent.length) {   // out of fresh nodes: compact on the next query
+            _dirty = true;
+            return;
+        }
+        int v = _nodes++;
+        _parent[v] = v;
+        _size[v] = 1;
+        _node[c] = v;
+        int h = _map.getHeight();
+        int x = c / h, y = c - x * h;
+        for (int d = 0; d < 4; d++) {
+            int nb = _map.neighbour(c, x, y, d);
+            if (nb >= 0 && _node[nb] >= 0) union(v, _node[nb]);
+        }
+    }
+
+    private void close(int c) {
+        _node[c] = -1;
+        if (maySplit(c)) _dirty = true;
+    }
+
+    /**
+     * Local test around a new obstacle c: walks the ring of its 8 surrounding cells
+     * (N, NE, E, SE, S, SW, W, NW) and counts the runs of walkable ring cells which hold
+     * a 4-neighbour of c. A single such run means all of c's neighbours are still joined.
+     */
+    private boolean maySplit(int c) {
+        int w = _map.getWidth(), h = _map.getHeight();
+        int[] cells = _map.cells();
+        int north = step(c, 0), west = step(c, 1), south = step(c, 2), east = step(c, 3);
+        int[] ring = {north, step(north, 3), east, step(east, 2), south, step(south, 1), west, step(west, 0)};
+
+        boolean[] open = new boolean[8];
+        int blocked = -1, orth = 0;
+        for (int i = 0; i < 8; i++) {
+            open[i] = ring[i] >= 0 && cells[ring[i]] != _obsColor && ring[i] != c;
+            if (!open[i]) blocked = i;
+            else if ((i & 1) == 0) orth++;
+        }
+        if (orth <= 1) return false;
+        if (w < 3 || h < 3) return true;   // the ring overlaps itself: stay conservative
+        if (blocked < 0) return false;
+
+        int runs = 0;
+        boolean inRun = false, hasOrth = false;
+        for (int k = 1; k <= 8; k++) {
+            int i = (blocked + k) & 7;
+            if (open[i]) {
+                inRun = true;
+                hasOrth |= (i & 1) == 0;
+            } else if (inRun) {
+                if (hasOrth) runs++;
+                inRun = hasOrth = false;
+            }
+        }
+        return runs > 1;
+    }
+
+    private int step(int id, int d) {
+        if (id < 0) return -1;
+        int h = _map.getHeight();
+        int x = id / h;
+        return _map.neighbour(id, x, id - x * h, d);
+    }
+
+    private int find(int v) {
+        while (_parent[v] != v) {
+            _parent[v] = _parent[_parent[v]];
+            v = _parent[v];
+        }
+        return v;
+    }
+
+    private void union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) return;
+        if (_size[a] < _size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        _parent[b] = a;
+        _size[a] += _size[b];
+    }
+}
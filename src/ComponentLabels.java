@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Connected components of a whole map: every cell gets the label (0..count()-1) of the
+ * 4-connected region of equal values it belongs to - what repeated fill() calls would find,
+ * in one pass over the board.
+ *
+ * The board is labeled in parallel (fork/join) over strips of whole columns, which are
+ * contiguous ranges of the flat cell array. Each strip runs union-find on its own cells;
+ * when two neighbouring strips are done their seam column pair is merged, and the cyclic
+ * seam (last column - first column) is merged at the end. Roots are always the smallest
+ * cell id of a set, so the final labels are numbered in cell order (x, then y).
+ */
+public class ComponentLabels {
+    // a strip is not split further below this many cells
+    private static final int LEAF_CELLS = 1 << 16;
+
+    private final Map _labels;
+    private final int[] _sizes;
+
+    private ComponentLabels(Map labels, int[] sizes) {
+        _labels = labels;
+        _sizes = sizes;
+    }
+
+    /**
+     * Labels all the components of map (using the common fork/join pool).
+     */
+    public static ComponentLabels of(Map map) {
+        return of(map, LEAF_CELLS);
+    }
+
+    static ComponentLabels of(Map map, int leafCells) {
+        int w = map.getWidth(), h = map.getHeight();
+        int[] cells = map.cells();
+        Map ans = new Map(w, h, 0);
+        if (cells.length == 0) return new ComponentLabels(ans, new int[0]);
+
+        // the label map's own cells hold the union-find parents until they are relabeled
+        int[] parent = ans.cells();
+        int leafCols = Math.max(1, leafCells / h);
+        ForkJoinPool.commonPool().invoke(new Strip(cells, parent, h, map.isCyclic(), 0, w, leafCols));
+        if (map.isCyclic() && w > 1) mergeColumns(cells, parent, h, w - 1, 0);
+
+        // parents point to smaller ids, so in one ascending pass the parent of every
+        // cell already holds its label (the label of the root)
+        int count = 0;
+        int[] sizes = new int[16];
+        for (int c = 0; c < parent.length; c++) {
+            int p = parent[c];
+            int label;
+            if (p == c) {
+                label = count++;
+                if (label == sizes.length) sizes = Arrays.copyOf(sizes, label * 2);
+            } else {
+                label = parent[p];
+            }
+            parent[c] = label;
+            sizes[label]++;
+        }
+        return new ComponentLabels(ans, Arrays.copyOf(sizes, count));
+    }
+
+    /**
+     * @return a map holding the component label of every cell.
+     */
+    public Map2D getLabels() {
+        return _labels;
+    }
+
+    /**
+     * @return the number of components.
+     */
+    public int count() {
+        return _sizes.length;
+    }
+
+    /**
+     * @return the number of cells of component label.
+     */
+    public int size(int label) {
+        return _sizes[label];
+    }
+
+    /**
+     * @return the sizes of all components (a copy), indexed by label.
+     */
+    public int[] sizes() {
+        return _sizes.clone();
+    }
+
+    /**
+     * Union-find over the columns [from, to): forks while the strip is wide, then
+     * merges the seam between its two halves.
+     */
+    @SuppressWarnings("serial")
+    private static final class Strip extends RecursiveAction {
+        private final int[] _cells, _parent;
+        private final int _h, _from, _to, _leafCols;
+        private final boolean _cyclic;
+
+        Strip(int[] cells, int[] parent, int h, boolean cyclic, int from, int to, int leafCols) {
+            _cells = cells;
+            _parent = parent;
+            _h = h;
+            _cyclic = cyclic;
+            _from = from;
+            _to = to;
+            _leafCols = leafCols;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= _leafCols) {
+                label();
+                return;
+            }
+            int mid = (_from + _to) >>> 1;
+            invokeAll(new Strip(_cells, _parent, _h, _cyclic, _from, mid, _leafCols),
+                    new Strip(_cells, _parent, _h, _cyclic, mid, _to, _leafCols));
+            mergeColumns(_cells, _parent, _h, mid - 1, mid);
+        }
+
+        private void label() {
+            int[] cells = _cells, parent = _parent;
+            int h = _h;
+            int lo = _from * h, hi = _to * h;
+            for (int c = lo; c < hi; c++) parent[c] = c;
+            for (int x = _from; x < _to; x++) {
+                int base = x * h;
+                for (int y = 0; y < h; y++) {
+                    int c = base + y;
+                    if (y + 1 < h && cells[c + 1] == cells[c]) union(parent, c, c + 1);
+                    if (c + h < hi && cells[c + h] == cells[c]) union(parent, c, c + h);
+                }
+                // the vertical seam of a cyclic column
+                if (_cyclic && h > 1 && cells[base] == cells[base + h - 1]) union(parent, base, base + h - 1);
+            }
+        }
+    }
+
+    private static void mergeColumns(int[] cells, int[] parent, int h, int left, int right) {
+        int a = left * h, b = right * h;
+        for (int y = 0; y < h; y++) {
+            if (cells[a + y] == cells[b + y]) union(parent, a + y, b + y);
+        }
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    // links the larger root under the smaller one, so every root is the smallest id of its set
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a < b) parent[b] = a;
+        else if (b < a) parent[a] = b;
+    }
+}
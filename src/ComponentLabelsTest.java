@@ -0,0 +1,85 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ComponentLabelsTest {
+
+    /**
+     * Compares with the regions found by fill(): same count, and each cell's component
+     * has the size of its fill region while equal neighbours share a label.
+     */
+    private static void assertMatchesFill(Map m, ComponentLabels cl) {
+        int w = m.getWidth(), h = m.getHeight();
+        Map2D labels = cl.getLabels();
+        Map copy = new Map(m.getMap());
+        copy.setCyclic(m.isCyclic());
+        int regions = 0;
+        int[] total = new int[cl.count()];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                if (copy.getPixel(x, y) < 0) continue;
+                int size = copy.fill(new Index2D(x, y), -1 - regions);
+                regions++;
+                assertEquals(size, cl.size(labels.getPixel(x, y)));
+            }
+        }
+        assertEquals(regions, cl.count());
+
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                total[labels.getPixel(x, y)]++;
+                for (int[] d : Map.DIRS) {
+                    int nx = x + d[0], ny = y + d[1];
+                    if (m.isCyclic()) {
+                        nx = (nx + w) % w;
+                        ny = (ny + h) % h;
+                    }
+                    if (!m.isInside(nx, ny)) continue;
+                    boolean same = m.getPixel(x, y) == m.getPixel(nx, ny);
+                    assertEquals(same, labels.getPixel(x, y) == labels.getPixel(nx, ny));
+                }
+            }
+        }
+        assertArrayEquals(total, cl.sizes());
+    }
+
+    @Test
+    void smallBoard_labelsInCellOrder() {
+        Map m = new Map(new int[][]{
+                {0, 0, 1},
+                {1, 1, 1},
+                {0, 2, 0}
+        });
+        m.setCyclic(false);
+        ComponentLabels cl = ComponentLabels.of(m);
+        assertEquals(5, cl.count());
+        assertArrayEquals(new int[][]{{0, 0, 1}, {1, 1, 1}, {2, 3, 4}}, cl.getLabels().getMap());
+        assertArrayEquals(new int[]{2, 4, 1, 1, 1}, cl.sizes());
+
+        m.setCyclic(true);
+        cl = ComponentLabels.of(m);
+        // the 0s join across both seams, (0,2) joins the 1s, the 2 stays alone
+        assertEquals(3, cl.count());
+        assertArrayEquals(new int[]{4, 4, 1}, cl.sizes());
+    }
+
+    @Test
+    void randomBoards_manyStrips_matchFill() {
+        Random r = new Random(16);
+        for (int round = 0; round < 60; round++) {
+            int w = 1 + r.nextInt(40), h = 1 + r.nextInt(30);
+            Map m = RandomMaps.randomColors(r, w, h, 2 + round % 3, round % 2 == 0);
+            // tiny leaves force forks and seam merges even on small boards
+            assertMatchesFill(m, ComponentLabels.of(m, 1 + r.nextInt(3 * h)));
+        }
+    }
+
+    @Test
+    void largeBoard_defaultStrips_matchFill() {
+        Random r = new Random(3);
+        Map m = RandomMaps.randomColors(r, 700, 300, 2, true);
+        assertMatchesFill(m, ComponentLabels.of(m));
+    }
+}
@@ -0,0 +1,476 @@
+import java.util.Arrays;
+
+/**
+ * A contraction hierarchy of the cells of a Map which avoid one obstacle color: a distance
+ * and shortest path oracle for many point to point queries on a big board, in far less memory
+ * than an all pairs table (see Map.useContractionHierarchy()).
+ *
+ * Built once: the cells are contracted one by one, least important first (ordered by edge
+ * difference - shortcuts added minus edges removed - plus the number of already contracted
+ * neighbours, with lazy updates). Contracting a cell v adds a shortcut u-w, remembering v as
+ * its middle cell, for every pair of its neighbours whose shortest path may run through v;
+ * a bounded Dijkstra (the witness search) skips the shortcut when a path as short avoids v.
+ * Steps around the wraps of a cyclic map are edges like any other.
+ *
+ * A query is a bidirectional Dijkstra which only follows edges toward higher ranked cells,
+ * so both searches stay small; the path is then unpacked from the shortcuts back to cells.
+ * The index follows the map as a listener: only a change of the obstacles (or a bulk change)
+ * makes it stale, and it is rebuilt on the next query.
+ */
+public class ContractionHierarchy implements MapListener {
+    // nodes a witness search may settle before it gives up (and the shortcut is added)
+    private static final int WITNESS_SETTLE_LIMIT = 64;
+    // shifts the (possibly negative) contraction priorities into the heap's key range
+    private static final int PRIORITY_OFFSET = 1 << 20;
+
+    private final Map _map;
+    private final int _obsColor;
+    private boolean _dirty = true;
+    private int _shortcuts;
+
+    // rank of every cell in the contraction order, -1 for obstacles
+    private int[] _rank = new int[0];
+    // upward graph: the edges of cell v toward higher ranked cells are at
+    // _upStart[v].._upStart[v+1]-1, with their weight and middle cell (-1 for a plain step)
+    private int[] _upStart, _upTo, _upW, _upMid;
+
+    // query workspace: per direction the tentative distance, parent cell and visit stamp
+    private int[] _distF, _distB, _parF, _parB, _stampF, _stampB;
+    private int _epoch;
+    private final LongHeap _heapF = new LongHeap(), _heapB = new LongHeap();
+    // the up chain of a path, from the start; the unpacking stack, from the end
+    private int[] _chain;
+
+    // build state, dropped once the upward graph is built
+    private int[][] _adjTo, _adjW, _adjMid;
+    private int[] _deg;
+    private boolean[] _contracted;
+    private int[] _witDist, _witStamp;
+    private int _witEpoch;
+    private final LongHeap _witHeap = new LongHeap();
+
+    ContractionHierarchy(Map map, int obsColor) {
+        _map = map;
+        _obsColor = obsColor;
+    }
+
+    /**
+     * @return the obstacle color the hierarchy avoids.
+     */
+    public int getObsColor() {
+        return _obsColor;
+    }
+
+    /**
+     * @return the number of shortcuts added by the contraction.
+     */
+    public int shortcuts() {
+        if (_dirty) build();
+        return _shortcuts;
+    }
+
+    /**
+     * @return the number of steps of a shortest path from a to b avoiding the obstacles, or
+     * -1 if there is none (or a or b is outside the map or an obstacle).
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        if (!_map.isInside(a) || !_map.isInside(b)) return -1;
+        if (_dirty) build();
+        int s = _map.cellOf(a), t = _map.cellOf(b);
+        if (_rank[s] < 0 || _rank[t] < 0) return -1;
+        return (s == t) ? 0 : query(s, t);
+    }
+
+    /**
+     * Writes a shortest path from a to b (both inclusive) into out.
+     * @return true iff there is a path (otherwise out is left empty).
+     */
+    public boolean shortestPath(Pixel2D a, Pixel2D b, PathBuffer out) {
+        out.clear();
+        if (!_map.isInside(a) || !_map.isInside(b)) return false;
+        return path(_map.cellOf(a), _map.cellOf(b), out);
+    }
+
+    @Override
+    public void cellChanged(int cell, int oldV, int newV) {
+        if (oldV == _obsColor || newV == _obsColor) _dirty = true;
+    }
+
+    @Override
+    public void mapChanged() {
+        _dirty = true;
+    }
+
+    /**
+     * Packed cell version of shortestPath(): s and t must be inside the map.
+     */
+    boolean path(int s, int t, PathBuffer out) {
+        if (_dirty) build();
+        if (_rank[s] < 0 || _rank[t] < 0) return false;
+        if (s == t) {
+            out.prepare(_map.pixels(), 1)[0] = s;
+            return true;
+        }
+        int meet = meet(s, t);
+        if (meet < 0) return false;
+
+        // the up chains s..meet and t..meet, then every edge unpacked to its steps
+        int[] cells = out.prepare(_map.pixels(), _distF[meet] + _distB[meet] + 1);
+        int k = 0;
+        for (int c = meet; c != s; c = _parF[c]) _chain[k++] = c;
+        int len = 0, prev = s;
+        cells[len++] = s;
+        while (k > 0) {
+            int c = _chain[--k];
+            len = unpack(prev, c, cells, len);
+            prev = c;
+        }
+        for (int c = meet; c != t; c = _parB[c]) {
+            len = unpack(c, _parB[c], cells, len);
+        }
+        return true;
+    }
+
+    private int query(int s, int t) {
+        int meet = meet(s, t);
+        return (meet < 0) ? -1 : _distF[meet] + _distB[meet];
+    }
+
+    /////////////////////// query ///////////////////////
+
+    // bidirectional upward Dijkstra; returns the cell where the best up-down path turns, or -1
+    private int meet(int s, int t) {
+        if (++_epoch == 0) {
+            // wrapped around after 2^32 queries: old stamps could look current again
+            Arrays.fill(_stampF, 0);
+            Arrays.fill(_stampB, 0);
+            _epoch = 1;
+        }
+        _heapF.clear();
+        _heapB.clear();
+        _stampF[s] = _epoch;
+        _distF[s] = 0;
+        _parF[s] = s;
+        _heapF.push(key(0, s));
+        _stampB[t] = _epoch;
+        _distB[t] = 0;
+        _parB[t] = t;
+        _heapB.push(key(0, t));
+
+        int best = Integer.MAX_VALUE, meet = -1;
+        while (true) {
+            long minF = _heapF.isEmpty() ? Long.MAX_VALUE : _heapF.peek() >>> 32;
+            long minB = _heapB.isEmpty() ? Long.MAX_VALUE : _heapB.peek() >>> 32;
+            // no path through an unsettled cell can beat best any more
+            if (Math.min(minF, minB) >= best) break;
+            boolean forward = minF <= minB;
+            LongHeap heap = forward ? _heapF : _heapB;
+            int[] dist = forward ? _distF : _distB, par = forward ? _parF : _parB;
+            int[] stamp = forward ? _stampF : _stampB;
+            int[] otherDist = forward ? _distB : _distF, otherStamp = forward ? _stampB : _stampF;
+
+            long k = heap.pop();
+            int x = (int) k, d = (int) (k >>> 32);
+            if (d != dist[x]) continue;   // stale: pushed again with a smaller distance
+            for (int e = _upStart[x]; e < _upStart[x + 1]; e++) {
+                int y = _upTo[e];
+                int nd = d + _upW[e];
+                if (stamp[y] == _epoch && dist[y] <= nd) continue;
+                stamp[y] = _epoch;
+                dist[y] = nd;
+                par[y] = x;
+                heap.push(key(nd, y));
+                if (otherStamp[y] == _epoch && nd + otherDist[y] < best) {
+                    best = nd + otherDist[y];
+                    meet = y;
+                }
+            }
+            if (otherStamp[x] == _epoch && d + otherDist[x] < best) {
+                best = d + otherDist[x];
+                meet = x;
+            }
+        }
+        return meet;
+    }
+
+    // writes the cells after a up to b (the edge a-b expanded to steps) from cells[len]
+    private int unpack(int a, int b, int[] cells, int len) {
+        // pending edges, the next one on top
+        int[] stack = _chain;
+        int top = stack.length;
+        stack[--top] = b;
+        stack[--top] = a;
+        while (top < stack.length) {
+            int x = stack[top++], y = stack[top++];
+            int m = _upMid[edge(x, y)];
+            if (m < 0) {
+                cells[len++] = y;
+            } else {
+                stack[--top] = y;
+                stack[--top] = m;
+                stack[--top] = m;
+                stack[--top] = x;
+            }
+        }
+        return len;
+    }
+
+    // the upward edge between x and y, stored at the lower ranked of the two
+    private int edge(int x, int y) {
+        int lo = (_rank[x] < _rank[y]) ? x : y, hi = (lo == x) ? y : x;
+        for (int e = _upStart[lo]; e < _upStart[lo + 1]; e++) {
+            if (_upTo[e] == hi) return e;
+        }
+        throw new IllegalStateException("no edge " + x + "-" + y);
+    }
+
+    /////////////////////// build ///////////////////////
+
+    private void build() {
+        int[] cells = _map.cells();
+        int n = cells.length, h = _map.getHeight();
+        _adjTo = new int[n][];
+        _adjW = new int[n][];
+        _adjMid = new int[n][];
+        _deg = new int[n];
+        _contracted = new boolean[n];
+        _witDist = new int[n];
+        _witStamp = new int[n];
+        _witEpoch = 0;
+        _rank = new int[n];
+        Arrays.fill(_rank, -1);
+        _shortcuts = 0;
+
+        for (int c = 0; c < n; c++) {
+            if (cells[c] == _obsColor) continue;
+            int x = c / h, y = c - x * h;
+            for (int d = 0; d < Map.DIRS.length; d++) {
+                int nb = _map.neighbour(c, x, y, d);
+                // a 1-wide cyclic map steps onto the cell itself
+                if (nb < 0 || nb == c || cells[nb] == _obsColor) continue;
+                setEdge(c, nb, 1, -1);
+            }
+        }
+
+        int[] deleted = new int[n];
+        int[] pending = new int[12];
+        LongHeap order = new LongHeap();
+        for (int c = 0; c < n; c++) {
+            if (cells[c] != _obsColor) order.push(key(priority(c, deleted, null) + PRIORITY_OFFSET, c));
+        }
+        int rank = 0;
+        while (!order.isEmpty()) {
+            int v = (int) order.pop();
+            // lazy update: contract v only if it is still the least important
+            int p = priority(v, deleted, null) + PRIORITY_OFFSET;
+            if (!order.isEmpty() && p > (order.peek() >>> 32)) {
+                order.push(key(p, v));
+                continue;
+            }
+            int k = shortcutsFor(v, pending);
+            if (pending.length < 3 * k) {
+                pending = new int[3 * k];
+                shortcutsFor(v, pending);
+            }
+            for (int i = 0; i < k; i++) {
+                int u = pending[3 * i], w = pending[3 * i + 1], wt = pending[3 * i + 2];
+                setEdge(u, w, wt, v);
+                setEdge(w, u, wt, v);
+            }
+            _shortcuts += k;
+            _contracted[v] = true;
+            _rank[v] = rank++;
+            for (int i = 0; i < _deg[v]; i++) {
+                if (!_contracted[_adjTo[v][i]]) deleted[_adjTo[v][i]]++;
+            }
+        }
+
+        buildUpward(n);
+        _adjTo = _adjW = _adjMid = null;
+        _deg = null;
+        _contracted = null;
+        _witDist = _witStamp = null;
+
+        _distF = new int[n];
+        _distB = new int[n];
+        _parF = new int[n];
+        _parB = new int[n];
+        _stampF = new int[n];
+        _stampB = new int[n];
+        // room for an up chain (at most n cells) below the unpacking stack (at most 2n)
+        _chain = new int[3 * n + 4];
+        _epoch = 0;
+        _dirty = false;
+    }
+
+    // edge difference plus contracted neighbours: the lower, the earlier v is contracted
+    private int priority(int v, int[] deleted, int[] pending) {
+        int remaining = 0;
+        for (int i = 0; i < _deg[v]; i++) {
+            if (!_contracted[_adjTo[v][i]]) remaining++;
+        }
+        return shortcutsFor(v, pending) - remaining + deleted[v];
+    }
+
+    /**
+     * Counts the shortcuts contracting v needs; if out is not null (and large enough) they
+     * are written into it as (u, w, weight) triples.
+     */
+    private int shortcutsFor(int v, int[] out) {
+        int count = 0;
+        int[] to = _adjTo[v], wt = _adjW[v];
+        for (int i = 0; i < _deg[v]; i++) {
+            int u = to[i];
+            if (_contracted[u]) continue;
+            // the longest path through v that a witness from u has to beat
+            int limit = -1;
+            for (int j = i + 1; j < _deg[v]; j++) {
+                if (!_contracted[to[j]]) limit = Math.max(limit, wt[i] + wt[j]);
+            }
+            if (limit < 0) continue;
+            witness(u, v, limit);
+            for (int j = i + 1; j < _deg[v]; j++) {
+                int w = to[j];
+                if (_contracted[w]) continue;
+                int through = wt[i] + wt[j];
+                if (_witStamp[w] == _witEpoch && _witDist[w] <= through) continue;
+                if (out != null && 3 * count + 2 < out.length) {
+                    out[3 * count] = u;
+                    out[3 * count + 1] = w;
+                    out[3 * count + 2] = through;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // bounded Dijkstra from u over the uncontracted cells other than skip
+    private void witness(int u, int skip, int limit) {
+        if (++_witEpoch == 0) {
+            Arrays.fill(_witStamp, 0);
+            _witEpoch = 1;
+        }
+        _witHeap.clear();
+        _witStamp[u] = _witEpoch;
+        _witDist[u] = 0;
+        _witHeap.push(key(0, u));
+        int settled = 0;
+        while (!_witHeap.isEmpty()) {
+            long k = _witHeap.pop();
+            int x = (int) k, d = (int) (k >>> 32);
+            if (d != _witDist[x]) continue;
+            if (d >= limit || ++settled > WITNESS_SETTLE_LIMIT) return;
+            for (int i = 0; i < _deg[x]; i++) {
+                int y = _adjTo[x][i];
+                if (y == skip || _contracted[y]) continue;
+                int nd = d + _adjW[x][i];
+                if (nd > limit || (_witStamp[y] == _witEpoch && _witDist[y] <= nd)) continue;
+                _witStamp[y] = _witEpoch;
+                _witDist[y] = nd;
+                _witHeap.push(key(nd, y));
+            }
+        }
+    }
+
+    // adds the edge a->b, or lowers its weight (and takes the new middle) if it exists
+    private void setEdge(int a, int b, int w, int mid) {
+        int[] to = _adjTo[a];
+        for (int i = 0; i < _deg[a]; i++) {
+            if (to[i] != b) continue;
+            if (w < _adjW[a][i]) {
+                _adjW[a][i] = w;
+                _adjMid[a][i] = mid;
+            }
+            return;
+        }
+        if (to == null || _deg[a] == to.length) {
+            int len = (to == null) ? 4 : 2 * to.length;
+            _adjTo[a] = (to == null) ? new int[len] : Arrays.copyOf(to, len);
+            _adjW[a] = (to == null) ? new int[len] : Arrays.copyOf(_adjW[a], len);
+            _adjMid[a] = (to == null) ? new int[len] : Arrays.copyOf(_adjMid[a], len);
+        }
+        int i = _deg[a]++;
+        _adjTo[a][i] = b;
+        _adjW[a][i] = w;
+        _adjMid[a][i] = mid;
+    }
+
+    private void buildUpward(int n) {
+        _upStart = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            int up = 0;
+            for (int i = 0; i < _deg[v]; i++) {
+                if (_rank[_adjTo[v][i]] > _rank[v]) up++;
+            }
+            _upStart[v + 1] = _upStart[v] + up;
+        }
+        int m = _upStart[n];
+        _upTo = new int[m];
+        _upW = new int[m];
+        _upMid = new int[m];
+        for (int v = 0; v < n; v++) {
+            int e = _upStart[v];
+            for (int i = 0; i < _deg[v]; i++) {
+                if (_rank[_adjTo[v][i]] <= _rank[v]) continue;
+                _upTo[e] = _adjTo[v][i];
+                _upW[e] = _adjW[v][i];
+                _upMid[e] = _adjMid[v][i];
+                e++;
+            }
+        }
+    }
+
+    // heap key: the value in the high half, the cell in the low half
+    private static long key(long value, int cell) {
+        return (value << 32) | cell;
+    }
+
+    /**
+     * A binary min-heap of longs.
+     */
+    private static final class LongHeap {
+        private long[] _a = new long[64];
+        private int _size;
+
+        boolean isEmpty() {
+            return _size == 0;
+        }
+
+        void clear() {
+            _size = 0;
+        }
+
+        long peek() {
+            return _a[0];
+        }
+
+        void push(long v) {
+            if (_size == _a.length) _a = Arrays.copyOf(_a, 2 * _size);
+            int i = _size++;
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (_a[p] <= v) break;
+                _a[i] = _a[p];
+                i = p;
+            }
+            _a[i] = v;
+        }
+
+        long pop() {
+            long top = _a[0];
+            long last = _a[--_size];
+            int i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= _size) break;
+                if (c + 1 < _size && _a[c + 1] < _a[c]) c++;
+                if (_a[c] >= last) break;
+                _a[i] = _a[c];
+                i = c;
+            }
+            if (_size > 0) _a[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContractionHierarchyTest {
+
+    private static final int OBS = 1;
+
+    private static void assertValidPath(Map m, PathBuffer path, Pixel2D a, Pixel2D b) {
+        assertEquals(m.cellOf(a), path.cell(0));
+        assertEquals(m.cellOf(b), path.cell(path.length() - 1));
+        for (int i = 0; i < path.length(); i++) {
+            assertNotEquals(OBS, m.getCell(path.cell(i)));
+            if (i == 0) continue;
+            boolean step = false;
+            for (int d = 0; d < 4; d++) step |= m.step(path.cell(i - 1), d) == path.cell(i);
+            assertTrue(step, "not a step at " + i + " of " + path);
+        }
+    }
+
+    private static void assertMatchesBfs(Map m, ContractionHierarchy ch, Random r, int queries) {
+        PathBuffer path = new PathBuffer();
+        for (int q = 0; q < queries; q++) {
+            Pixel2D a = new Index2D(r.nextInt(m.getWidth()), r.nextInt(m.getHeight()));
+            Pixel2D b = new Index2D(r.nextInt(m.getWidth()), r.nextInt(m.getHeight()));
+            int expected = -1;
+            if (m.getPixel(a) != OBS && m.getPixel(b) != OBS) expected = m.allDistance(a, OBS).getPixel(b);
+
+            assertEquals(expected, ch.distance(a, b), "from " + a + " to " + b);
+            assertEquals(expected >= 0, ch.shortestPath(a, b, path));
+            if (expected < 0) {
+                assertTrue(path.isEmpty());
+                continue;
+            }
+            assertEquals(expected + 1, path.length());
+            assertValidPath(m, path, a, b);
+        }
+    }
+
+    @Test
+    void randomBoards_matchBfs_withWrapEdges() {
+        Random r = new Random(25);
+        for (int round = 0; round < 40; round++) {
+            int w = 1 + r.nextInt(25), h = 1 + r.nextInt(20);
+            Map m = RandomMaps.randomMap(r, w, h, 0.1 + 0.3 * r.nextDouble(), round % 2 == 0);
+            ContractionHierarchy ch = m.useContractionHierarchy(OBS);
+            assertMatchesBfs(m, ch, r, 40);
+        }
+    }
+
+    @Test
+    void openBoard_needsShortcuts_andStaysExact() {
+        Random r = new Random(250);
+        Map m = new Map(60, 50, 0);
+        ContractionHierarchy ch = m.useContractionHierarchy(OBS);
+        assertTrue(ch.shortcuts() > 0);
+        assertMatchesBfs(m, ch, r, 100);
+    }
+
+    @Test
+    void shortestPath_usesTheHierarchy_andWallChangesRebuildIt() {
+        Random r = new Random(2500);
+        Map m = RandomMaps.randomMap(r, 20, 15, 0.25, true);
+        ContractionHierarchy ch = m.useContractionHierarchy(OBS);
+        assertSame(ch, m.useContractionHierarchy(OBS));
+        assertMatchesBfs(m, ch, r, 20);
+
+        for (int step = 0; step < 20; step++) {
+            int x = r.nextInt(20), y = r.nextInt(15);
+            m.setPixel(x, y, m.getPixel(x, y) == OBS ? 0 : OBS);
+            // a dot that is not a wall keeps the hierarchy as it is
+            if (m.getPixel(x, y) != OBS) m.setPixel(x, y, 3);
+
+            Pixel2D a = new Index2D(r.nextInt(20), r.nextInt(15));
+            Pixel2D b = new Index2D(r.nextInt(20), r.nextInt(15));
+            int expected = -1;
+            if (m.getPixel(a) != OBS && m.getPixel(b) != OBS) expected = m.allDistance(a, OBS).getPixel(b);
+            Pixel2D[] p = m.shortestPath(a, b, OBS);
+            assertEquals(expected, (p == null) ? -1 : p.length - 1);
+            assertEquals(expected, ch.distance(a, b));
+        }
+        m.dropContractionHierarchy(OBS);
+        ContractionHierarchy fresh = m.useContractionHierarchy(OBS);
+        assertNotSame(ch, fresh);
+        assertMatchesBfs(m, fresh, r, 20);
+    }
+}
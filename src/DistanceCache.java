@@ -0,0 +1,136 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded LRU store of the distance fields computed by Map.allDistance()
+ * (see Map.enableDistanceCache()), so asking again for the field of the same source cells
+ * costs a hash lookup and a copy instead of a BFS.
+ *
+ * A field is keyed by (source cells, obstacle color, map version): any change of the map
+ * bumps Map.version(), so a cached field is never served for a map it was not computed on.
+ * Since the version only grows, the entries of an older version can never be hit again and
+ * are dropped as soon as a newer version is looked up. Within a version the least recently
+ * used field is evicted once the capacity is exceeded.
+ */
+public class DistanceCache {
+    private final int _capacity;
+    private final LinkedHashMap<Key, Field> _fields;
+    private long _version;
+    private long _hits, _misses;
+
+    DistanceCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        _capacity = capacity;
+        // access order: iteration starts at the least recently used field
+        _fields = new LinkedHashMap<Key, Field>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Key, Field> eldest) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the maximal number of fields kept.
+     */
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * @return the number of fields currently kept.
+     */
+    public int size() {
+        return _fields.size();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long hits() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of lookups which had to compute the field.
+     */
+    public long misses() {
+        return _misses;
+    }
+
+    /**
+     * Drops every field and zeroes the hit/miss counters.
+     */
+    public void clear() {
+        _fields.clear();
+        _hits = _misses = 0;
+    }
+
+    /**
+     * @param sources the source cells by their index in the query, -1 for an ignored source.
+     * @param withLabels true if the caller needs the source labels as well.
+     * @return the cached field, or null (a miss) - also when labels are needed but the
+     * cached field has none.
+     */
+    Field get(int[] sources, int obsColor, long version, boolean withLabels) {
+        if (version != _version) {
+            _fields.clear();
+            _version = version;
+        }
+        Field f = _fields.get(new Key(sources, obsColor, version));
+        if (f == null || (withLabels && f.labels == null)) {
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return f;
+    }
+
+    /**
+     * Stores a field; the arrays are kept as given, so the caller must not change them.
+     */
+    void put(int[] sources, int obsColor, long version, int[] dist, int[] labels) {
+        _fields.put(new Key(sources.clone(), obsColor, version), new Field(dist, labels));
+    }
+
+    /**
+     * A cached field: the distances and, for multi-source fields, the index of the source
+     * which reached each cell (or null).
+     */
+    static final class Field {
+        final int[] dist;
+        final int[] labels;
+
+        Field(int[] dist, int[] labels) {
+            this.dist = dist;
+            this.labels = labels;
+        }
+    }
+
+    private static final class Key {
+        private final int[] _sources;
+        private final int _obsColor;
+        private final long _version;
+        private final int _hash;
+
+        Key(int[] sources, int obsColor, long version) {
+            _sources = sources;
+            _obsColor = obsColor;
+            _version = version;
+            _hash = 31 * (31 * Arrays.hashCode(sources) + obsColor) + Long.hashCode(version);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return _hash == k._hash && _obsColor == k._obsColor && _version == k._version
+                    && Arrays.equals(_sources, k._sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+    }
+}
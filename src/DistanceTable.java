@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * All-pairs shortest path table over the walkable cells of a Map (one BFS per cell).
+ * Walls do not change during a level, so this is computed once and then answers
+ * distance(a,b) and nextStep(a,b) in O(1).
+ * Distances are stored as unsigned 16 bit values and the first step of each path as a
+ * byte (an index into Map.DIRS), i.e. 3 bytes per pair of walkable cells.
+ * The table can be saved to a file and loaded back as a memory-mapped buffer. A saved table
+ * is one mapping, which Java caps at Integer.MAX_VALUE bytes, so a table holds at most
+ * MAX_CELLS walkable cells.
+ */
+public class DistanceTable {
+    private static final int MAGIC = 0x45783344; // "Ex3D"
+    private static final int HEADER = 6 * Integer.BYTES;
+    private static final char UNREACHABLE = 0xFFFF;
+    private static final byte NO_STEP = -1;
+
+    /** The most walkable cells of a table: the largest n whose file (see save()) fits one mapping. */
+    public static final int MAX_CELLS = maxCells();
+
+    private final int _w, _h;
+    private final boolean _cyclic;
+    private final int[] _cellOf;   // walkable index -> cell id (x*h+y)
+    private final int[] _indexOf;  // cell id -> walkable index, -1 for obstacles
+    private final CharBuffer _dist; // [a*n+b]
+    private final ByteBuffer _step; // [a*n+b]
+    private PixelTable _pixels;     // of the map, or created on first use for a loaded table
+
+    /**
+     * Computes the table of map, where obsColor marks the obstacles.
+     * @throws IllegalArgumentException if the map has more than MAX_CELLS walkable cells.
+     */
+    public DistanceTable(Map map, int obsColor) {
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _cyclic = map.isCyclic();
+        _pixels = map.pixels();
+
+        int[] cells = map.cells();
+        int n = 0;
+        for (int c : cells) if (c != obsColor) n++;
+        if (n > MAX_CELLS) {
+            throw new IllegalArgumentException("DistanceTable: " + n + " walkable cells is more than " + MAX_CELLS);
+        }
+        _cellOf = new int[n];
+        _indexOf = indexCells(cells, obsColor, _cellOf);
+
+        _dist = CharBuffer.allocate(n * n);
+        _step = ByteBuffer.allocate(n * n);
+        for (int i = 0; i < n * n; i++) {
+            _dist.put(i, UNREACHABLE);
+            _step.put(i, NO_STEP);
+        }
+
+        MapBfs bfs = map.bfs();
+        int[] first = new int[cells.length];
+        for (int a = 0; a < n; a++) {
+            int src = _cellOf[a];
+            bfs.run(src, obsColor, false, -1);
+            int count = bfs.visitedCount();
+            // BFS order: the parent of each cell is handled before the cell itself
+            for (int i = 0; i < count; i++) {
+                int c = bfs.visited(i);
+                int p = bfs.parent(c);
+                first[c] = (c == src) ? NO_STEP : (p == src) ? directionTo(map, src, c) : first[p];
+
+                int d = bfs.distance(c);
+                if (d >= UNREACHABLE) {
+                    throw new IllegalArgumentException("DistanceTable: distance " + d + " does not fit 16 bits");
+                }
+                int k = a * n + _indexOf[c];
+                _dist.put(k, (char) d);
+                _step.put(k, (byte) first[c]);
+            }
+        }
+    }
+
+    private DistanceTable(int w, int h, boolean cyclic, int[] cellOf, CharBuffer dist, ByteBuffer step) {
+        _w = w;
+        _h = h;
+        _cyclic = cyclic;
+        _cellOf = cellOf;
+        _indexOf = new int[w * h];
+        Arrays.fill(_indexOf, -1);
+        for (int i = 0; i < cellOf.length; i++) _indexOf[cellOf[i]] = i;
+        _dist = dist;
+        _step = step;
+    }
+
+    /**
+     * @return the number of walkable cells covered by this table.
+     */
+    public int size() {
+        return _cellOf.length;
+    }
+
+    /**
+     * @return the shortest path distance from a to b, or -1 if one of them is not a
+     * walkable cell of the map or b can not be reached from a.
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        int k = pair(a, b);
+        if (k < 0) return -1;
+        char d = _dist.get(k);
+        return (d == UNREACHABLE) ? -1 : d;
+    }
+
+    /**
+     * @return the first step (an index into Map.DIRS) of a shortest path from a to b,
+     * or -1 if there is none (a equals b, or b is not reachable from a).
+     */
+    public int nextDirection(Pixel2D a, Pixel2D b) {
+        int k = pair(a, b);
+        return (k < 0) ? -1 : _step.get(k);
+    }
+
+    /**
+     * @return the cell following a on a shortest path from a to b, or null if there is none.
+     */
+    public Pixel2D nextStep(Pixel2D a, Pixel2D b) {
+        int d = nextDirection(a, b);
+        if (d < 0) return null;
+        int x = a.getX() + Map.DIRS[d][0];
+        int y = a.getY() + Map.DIRS[d][1];
+        if (_pixels == null) _pixels = new PixelTable(_w, _h);
+        return _pixels.get((x + _w) % _w * _h + (y + _h) % _h);
+    }
+
+    /**
+     * Writes this table to a file (see load()).
+     * @param path the file to create or overwrite.
+     * @throws IOException if the file can not be written.
+     */
+    public void save(String path) throws IOException {
+        int n = _cellOf.length;
+        long size = fileSize(n);
+        Path file = Paths.get(path);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(_w).putInt(_h).putInt(_cyclic ? 1 : 0).putInt(n).putInt(0);
+            for (int c : _cellOf) out.putInt(c);
+            for (int i = 0; i < n * n; i++) out.putChar(_dist.get(i));
+            for (int i = 0; i < n * n; i++) out.put(_step.get(i));
+            out.force();
+        }
+    }
+
+    /**
+     * Loads a table written by save(). The pair data is memory-mapped, not read,
+     * so loading costs O(width*height) regardless of the table size.
+     * @param path the file to load.
+     * @return the loaded table.
+     * @throws IOException if the file can not be read or is not a saved DistanceTable.
+     */
+    public static DistanceTable load(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER) throw new IOException("Not a DistanceTable file: " + path);
+            MappedByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (in.getInt() != MAGIC) throw new IOException("Not a DistanceTable file: " + path);
+            int w = in.getInt(), h = in.getInt();
+            boolean cyclic = in.getInt() == 1;
+            int n = in.getInt();
+            in.getInt();
+            if (w < 0 || h < 0 || n < 0 || n > MAX_CELLS || n > (long) w * h || size != fileSize(n)) {
+                throw new IOException("Corrupted DistanceTable file: " + path);
+            }
+
+            int[] cellOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                cellOf[i] = in.getInt();
+                if (cellOf[i] < 0 || cellOf[i] >= (long) w * h) throw new IOException("Corrupted DistanceTable file: " + path);
+            }
+            CharBuffer dist = in.slice().limit(n * n * Character.BYTES).asCharBuffer();
+            in.position(in.position() + n * n * Character.BYTES);
+            ByteBuffer step = in.slice().limit(n * n);
+            return new DistanceTable(w, h, cyclic, cellOf, dist, step);
+        }
+    }
+
+    // bytes of the file of a table of n cells: header, cell ids, distances, steps
+    private static long fileSize(long n) {
+        return HEADER + n * Integer.BYTES + n * n * (Character.BYTES + 1);
+    }
+
+    private static int maxCells() {
+        int n = (int) Math.sqrt(Integer.MAX_VALUE / (Character.BYTES + 1));
+        while (fileSize(n) > Integer.MAX_VALUE) n--;
+        return n;
+    }
+
+    private int pair(Pixel2D a, Pixel2D b) {
+        if (a == null || b == null) return -1;
+        int i = index(a), j = index(b);
+        if (i < 0 || j < 0) return -1;
+        return i * _cellOf.length + j;
+    }
+
+    private int index(Pixel2D p) {
+        int x = p.getX(), y = p.getY();
+        if (x < 0 || y < 0 || x >= _w || y >= _h) return -1;
+        return _indexOf[x * _h + y];
+    }
+
+    private static int[] indexCells(int[] cells, int obsColor, int[] cellOf) {
+        int[] indexOf = new int[cells.length];
+        for (int c = 0, i = 0; c < cells.length; c++) {
+            if (cells[c] == obsColor) {
+                indexOf[c] = -1;
+            } else {
+                cellOf[i] = c;
+                indexOf[c] = i++;
+            }
+        }
+        return indexOf;
+    }
+
+    private static int directionTo(Map map, int from, int to) {
+        int h = map.getHeight();
+        int x = from / h;
+        for (int d = 0; d < 4; d++) {
+            if (map.neighbour(from, x, from - x * h, d) == to) return d;
+        }
+        return NO_STEP;
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DistanceTableTest {
+
+    private static final int OBS = 1;
+
+    private static Map maze() {
+        int[][] a = {
+                {0, 0, 0, 0, 0},
+                {0, 1, 1, 1, 0},
+                {0, 0, 0, 1, 0},
+                {1, 1, 0, 1, 0},
+                {0, 0, 0, 0, 0},
+                {0, 1, 1, 1, 1}
+        };
+        Map m = new Map(a);
+        m.setCyclic(false);
+        return m;
+    }
+
+    private static void assertMatchesBfs(Map m, DistanceTable t) {
+        int w = m.getWidth(), h = m.getHeight();
+        for (int x1 = 0; x1 < w; x1++) {
+            for (int y1 = 0; y1 < h; y1++) {
+                Pixel2D a = new Index2D(x1, y1);
+                Map2D d = m.allDistance(a, OBS);
+                for (int x2 = 0; x2 < w; x2++) {
+                    for (int y2 = 0; y2 < h; y2++) {
+                        Pixel2D b = new Index2D(x2, y2);
+                        int expected = (m.getPixel(a) == OBS || m.getPixel(b) == OBS) ? -1 : d.getPixel(b);
+                        assertEquals(expected, t.distance(a, b));
+
+                        Pixel2D next = t.nextStep(a, b);
+                        if (expected <= 0) {
+                            assertNull(next);
+                            continue;
+                        }
+                        // one step closer to b along a shortest path
+                        assertNotEquals(OBS, m.getPixel(next));
+                        assertEquals(expected - 1, t.distance(next, b));
+                        assertEquals(1, t.distance(a, next));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void distancesAndSteps_matchBfs_nonCyclic() {
+        Map m = maze();
+        DistanceTable t = new DistanceTable(m, OBS);
+        assertEquals(19, t.size());
+        assertMatchesBfs(m, t);
+    }
+
+    @Test
+    void distancesAndSteps_matchBfs_cyclic() {
+        Map m = maze();
+        m.setCyclic(true);
+        DistanceTable t = new DistanceTable(m, OBS);
+        assertEquals(1, t.distance(new Index2D(0, 0), new Index2D(5, 0)));
+        assertMatchesBfs(m, t);
+    }
+
+    @Test
+    void outsideOrObstacle_returnsMinus1() {
+        DistanceTable t = new DistanceTable(maze(), OBS);
+        assertEquals(-1, t.distance(new Index2D(1, 1), new Index2D(0, 0)));
+        assertEquals(-1, t.distance(new Index2D(0, 0), new Index2D(0, 5)));
+        assertEquals(-1, t.nextDirection(new Index2D(0, 0), new Index2D(0, 0)));
+        assertNull(t.nextStep(new Index2D(0, 0), null));
+    }
+
+    @Test
+    void saveAndLoad_roundTrip() throws IOException {
+        Map m = maze();
+        DistanceTable t = new DistanceTable(m, OBS);
+        File f = File.createTempFile("dist", ".tbl");
+        try {
+            t.save(f.getPath());
+            DistanceTable loaded = DistanceTable.load(f.getPath());
+            assertEquals(t.size(), loaded.size());
+            assertMatchesBfs(m, loaded);
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    void load_rejectsOtherFiles() throws IOException {
+        File f = File.createTempFile("dist", ".tbl");
+        try {
+            Files.write(f.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24});
+            assertThrows(IOException.class, () -> DistanceTable.load(f.getPath()));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    void tooManyCells_areRejected_beforeAnythingIsAllocated() {
+        // a saved table must fit one mapping (less than 2 GB)
+        assertTrue(DistanceTable.MAX_CELLS > 26000 && DistanceTable.MAX_CELLS < 27000);
+        Map big = new Map(DistanceTable.MAX_CELLS + 1, 1, 0);
+        assertThrows(IllegalArgumentException.class, () -> new DistanceTable(big, OBS));
+    }
+
+    @Test
+    void load_rejectsAHeaderAboveTheLimit() throws IOException {
+        File f = File.createTempFile("dist", ".tbl");
+        try {
+            // magic, w, h, cyclic, n: a cell count whose n*n overflows an int
+            ByteBuffer header = ByteBuffer.allocate(24);
+            header.putInt(0x45783344).putInt(50000).putInt(50000).putInt(0).putInt(50000).putInt(0);
+            Files.write(f.toPath(), header.array());
+            assertThrows(IOException.class, () -> DistanceTable.load(f.getPath()));
+        } finally {
+            f.delete();
+        }
+    }
+}
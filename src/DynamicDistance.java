@@ -0,0 +1,348 @@
+import java.util.Arrays;
+
+/**
+ * A distance map (like Map.allDistance()) which is kept up to date instead of being
+ * recomputed: moving the source, or turning a cell into an obstacle or back, only
+ * repairs the cells whose distance actually changes.
+ *
+ * Decreases (a new source, a cell that opens up) spread with a plain BFS from the changed
+ * cell. Increases (a source that goes away, a new obstacle) first collect the cells that
+ * lost every neighbour one step closer to a source, then recompute just those cells from
+ * the unaffected cells around them (a dynamic SSSP repair, in the spirit of LPA*).
+ *
+ * Map cells must be changed through setPixel() of this class; a change made directly on
+ * the map (or a change of its cyclic flag) is not seen here.
+ */
+public class DynamicDistance {
+    private static final int INF = Integer.MAX_VALUE;
+
+    private final Map _map;
+    private final int[] _cells;
+    private final int _obsColor;
+    private final int[] _dist;        // INF = obstacle or unreachable
+    private final boolean[] _source;
+    private int _src;
+
+    // repair work arrays
+    private final int[] _queue;
+    private final int[] _stamp;       // == _epoch: queued in the current repair
+    private final int[] _lost;        // == _epoch: affected (lost its support) in the current repair
+    private int _epoch;
+    private int[] _affected = new int[64];
+    private long[] _seeds = new long[64];
+    private int _lastRepair;
+
+    /**
+     * Computes the distances of every cell of map from source, where obsColor marks the obstacles.
+     * @throws IllegalArgumentException if source is not inside map.
+     */
+    public DynamicDistance(Map map, Pixel2D source, int obsColor) {
+        this(map, obsColor, new int[]{cellOf(map, source)}, 1);
+        _src = cellOf(map, source);
+    }
+
+    /**
+     * Distances to the nearest of the count first cells of sources, computed with one
+     * multi-source BFS. The sources are then changed with addSource()/removeSource().
+     */
+    DynamicDistance(Map map, int obsColor, int[] sources, int count) {
+        _map = map;
+        _cells = map.cells();
+        _obsColor = obsColor;
+        int n = _cells.length;
+        _dist = new int[n];
+        _source = new boolean[n];
+        _queue = new int[n];
+        _stamp = new int[n];
+        _lost = new int[n];
+        Arrays.fill(_dist, INF);
+
+        int tail = 0;
+        for (int i = 0; i < count; i++) {
+            int c = sources[i];
+            _source[c] = true;
+            if (_cells[c] == _obsColor || _dist[c] == 0) continue;
+            _dist[c] = 0;
+            _queue[tail++] = c;
+        }
+        _src = -1;
+        decreaseQueued(tail);
+    }
+
+    /**
+     * @return the current source cell (null for a field of several sources).
+     */
+    public Pixel2D getSource() {
+        return (_src < 0) ? null : _map.pixel(_src);
+    }
+
+    /**
+     * @return the distance from the source to (x,y) in the same format as
+     * Map.allDistance(): obsColor on obstacles, -1 if unreachable.
+     */
+    public int getDistance(int x, int y) {
+        if (!_map.isInside(x, y)) throw new ArrayIndexOutOfBoundsException("(" + x + "," + y + ") is outside the map");
+        int c = x * _map.getHeight() + y;
+        if (_cells[c] == _obsColor) return _obsColor;
+        return (_dist[c] == INF) ? -1 : _dist[c];
+    }
+
+    /**
+     * @return getDistance(p.getX(), p.getY()).
+     */
+    public int getDistance(Pixel2D p) {
+        return getDistance(p.getX(), p.getY());
+    }
+
+    /**
+     * @return a new map with the current distances, as Map.allDistance() would compute them.
+     */
+    public Map2D toMap() {
+        int w = _map.getWidth(), h = _map.getHeight();
+        Map ans = new Map(w, h, 0);
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) ans.setPixel(x, y, getDistance(x, y));
+        }
+        return ans;
+    }
+
+    /**
+     * Moves the source to p (typically one step away) and repairs the distances.
+     */
+    public void moveSource(Pixel2D p) {
+        if (_src < 0) throw new IllegalStateException("not a single source field");
+        int to = cellOf(_map, p);
+        if (to == _src) return;
+        int from = _src;
+        _src = to;
+        addSource(to);
+        removeSource(from);
+    }
+
+    /**
+     * Sets map[x][y] to v and repairs the distances if the cell became an obstacle
+     * or stopped being one.
+     */
+    public void setPixel(int x, int y, int v) {
+        int c = x * _map.getHeight() + y;
+        int old = _cells[c];
+        _map.setPixel(x, y, v);
+        cellChanged(c, old, v);
+    }
+
+    /**
+     * @see #setPixel(int, int, int)
+     */
+    public void setPixel(Pixel2D p, int v) {
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    /**
+     * @return the number of cells visited by the last repair (a measure of its cost).
+     */
+    public int lastRepairSize() {
+        return _lastRepair;
+    }
+
+    /////////////////////// repair ///////////////////////
+
+    /**
+     * @return the distance of a packed cell, -1 if it is an obstacle or unreachable.
+     */
+    int distance(int c) {
+        return (_dist[c] == INF) ? -1 : _dist[c];
+    }
+
+    /**
+     * Repairs after the (already written) cell c changed from oldV to newV.
+     */
+    void cellChanged(int c, int oldV, int newV) {
+        boolean wasObs = oldV == _obsColor, isObs = newV == _obsColor;
+        if (wasObs == isObs) {
+            _lastRepair = 0;
+        } else if (isObs) {
+            blocked(c);
+        } else {
+            opened(c);
+        }
+    }
+
+    /**
+     * Makes c a source (distance 0) and spreads the decrease.
+     */
+    void addSource(int c) {
+        _source[c] = true;
+        _lastRepair = 0;
+        if (_cells[c] == _obsColor || _dist[c] == 0) return;
+        _dist[c] = 0;
+        decrease(c);
+    }
+
+    /**
+     * Stops c from being a source and repairs the cells that depended on it.
+     */
+    void removeSource(int c) {
+        _source[c] = false;
+        _lastRepair = 0;
+        if (_cells[c] == _obsColor) return;
+        increase(new int[]{c}, 1);
+    }
+
+    private void opened(int c) {
+        _lastRepair = 0;
+        int best = _source[c] ? 0 : INF;
+        int h = _map.getHeight();
+        int x = c / h, y = c - x * h;
+        for (int d = 0; d < 4; d++) {
+            int n = _map.neighbour(c, x, y, d);
+            if (n >= 0 && _dist[n] != INF) best = Math.min(best, _dist[n] + 1);
+        }
+        if (best == INF) return;
+        _dist[c] = best;
+        decrease(c);
+    }
+
+    private void blocked(int c) {
+        _lastRepair = 0;
+        int old = _dist[c];
+        _dist[c] = INF;
+        if (old == INF) return;
+
+        // only the neighbours one step farther may have depended on c
+        int h = _map.getHeight();
+        int x = c / h, y = c - x * h;
+        int[] seeds = new int[4];
+        int k = 0;
+        for (int d = 0; d < 4; d++) {
+            int n = _map.neighbour(c, x, y, d);
+            if (n >= 0 && n != c && _dist[n] == old + 1) seeds[k++] = n;
+        }
+        increase(seeds, k);
+    }
+
+    /**
+     * BFS from c (whose distance was just lowered), lowering every distance it improves.
+     */
+    private void decrease(int c) {
+        _queue[0] = c;
+        decreaseQueued(1);
+    }
+
+    /**
+     * BFS from the tail first cells of _queue, which all hold the same (just lowered) distance.
+     */
+    private void decreaseQueued(int tail) {
+        int h = _map.getHeight();
+        int head = 0;
+        while (head < tail) {
+            int u = _queue[head++];
+            int x = u / h, y = u - x * h;
+            int nd = _dist[u] + 1;
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(u, x, y, d);
+                if (n < 0 || _cells[n] == _obsColor || _dist[n] <= nd) continue;
+                _dist[n] = nd;
+                _queue[tail++] = n;
+            }
+        }
+        _lastRepair += tail;
+    }
+
+    /**
+     * Repairs after distances may have grown. seeds (all at the same old distance) are the
+     * first cells that may have lost their support.
+     */
+    private void increase(int[] seeds, int count) {
+        if (++_epoch == 0) {
+            Arrays.fill(_stamp, 0);
+            Arrays.fill(_lost, 0);
+            _epoch = 1;
+        }
+        int h = _map.getHeight();
+
+        // 1. collect the affected cells, in non decreasing order of their old distance
+        int head = 0, tail = 0, affected = 0;
+        for (int i = 0; i < count; i++) {
+            if (_stamp[seeds[i]] == _epoch) continue;
+            _stamp[seeds[i]] = _epoch;
+            _queue[tail++] = seeds[i];
+        }
+        while (head < tail) {
+            int u = _queue[head++];
+            if (_source[u] || hasSupport(u)) continue;
+            _lost[u] = _epoch;
+            if (affected == _affected.length) _affected = Arrays.copyOf(_affected, affected * 2);
+            _affected[affected++] = u;
+
+            int x = u / h, y = u - x * h;
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(u, x, y, d);
+                if (n < 0 || _stamp[n] == _epoch || _dist[n] != _dist[u] + 1) continue;
+                _stamp[n] = _epoch;
+                _queue[tail++] = n;
+            }
+        }
+        _lastRepair += tail;
+        if (affected == 0) return;
+
+        // 2. each affected cell gets a first estimate from its unaffected neighbours
+        for (int i = 0; i < affected; i++) _dist[_affected[i]] = INF;
+        int seedCount = 0;
+        for (int i = 0; i < affected; i++) {
+            int u = _affected[i];
+            int x = u / h, y = u - x * h;
+            int best = INF;
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(u, x, y, d);
+                if (n < 0 || _lost[n] == _epoch || _dist[n] == INF) continue;
+                best = Math.min(best, _dist[n] + 1);
+            }
+            if (best == INF) continue;
+            _dist[u] = best;
+            if (seedCount == _seeds.length) _seeds = Arrays.copyOf(_seeds, seedCount * 2);
+            _seeds[seedCount++] = (long) best << 32 | u;
+        }
+        Arrays.sort(_seeds, 0, seedCount);
+
+        // 3. BFS inside the affected region, merging the sorted estimates with the FIFO queue
+        // (pops are non decreasing, so every cell is expanded once: as a seed or from the queue)
+        head = tail = 0;
+        int si = 0;
+        while (si < seedCount || head < tail) {
+            int u;
+            if (head == tail || (si < seedCount && (int) (_seeds[si] >>> 32) <= _dist[_queue[head]])) {
+                u = (int) _seeds[si];
+                if (_dist[u] != (int) (_seeds[si++] >>> 32)) continue;   // improved since
+            } else {
+                u = _queue[head++];
+            }
+            int x = u / h, y = u - x * h;
+            int nd = _dist[u] + 1;
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(u, x, y, d);
+                if (n < 0 || _lost[n] != _epoch || _dist[n] <= nd) continue;
+                _dist[n] = nd;
+                _queue[tail++] = n;
+            }
+        }
+    }
+
+    /**
+     * @return true iff u still has an unaffected neighbour one step closer to a source.
+     */
+    private boolean hasSupport(int u) {
+        if (_dist[u] == INF || _dist[u] == 0) return false;
+        int h = _map.getHeight();
+        int x = u / h, y = u - x * h;
+        for (int d = 0; d < 4; d++) {
+            int n = _map.neighbour(u, x, y, d);
+            if (n >= 0 && _lost[n] != _epoch && _dist[n] == _dist[u] - 1) return true;
+        }
+        return false;
+    }
+
+    private static int cellOf(Map map, Pixel2D p) {
+        if (!map.isInside(p)) throw new IllegalArgumentException("source is not inside the map: " + p);
+        return p.getX() * map.getHeight() + p.getY();
+    }
+}
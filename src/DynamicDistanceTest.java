@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DynamicDistanceTest {
+
+    private static final int OBS = 1;
+
+    private static void assertSameField(Map m, DynamicDistance dd) {
+        Map2D expected = m.allDistance(dd.getSource(), OBS);
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                assertEquals(expected.getPixel(x, y), dd.getDistance(x, y), "at (" + x + "," + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void constructor_matchesAllDistance() {
+        Map m = new Map(new int[][]{
+                {0, 0, 0, 0},
+                {1, 1, 0, 1},
+                {0, 0, 0, 0},
+                {0, 1, 1, 0}
+        });
+        m.setCyclic(false);
+        DynamicDistance dd = new DynamicDistance(m, new Index2D(0, 0), OBS);
+        assertSameField(m, dd);
+        assertEquals(m.allDistance(new Index2D(0, 0), OBS).getPixel(3, 3), dd.toMap().getPixel(3, 3));
+    }
+
+    @Test
+    void moveSource_oneStepAtATime_matchesAllDistance() {
+        Random r = new Random(13);
+        for (int round = 0; round < 40; round++) {
+            Map m = RandomMaps.randomMap(r, 12, 9, 0.25, round % 2 == 0);
+            Pixel2D p = new Index2D(r.nextInt(12), r.nextInt(9));
+            m.setPixel(p, 0);
+            DynamicDistance dd = new DynamicDistance(m, p, OBS);
+            for (int step = 0; step < 30; step++) {
+                int[] dir = Map.DIRS[r.nextInt(4)];
+                int x = p.getX() + dir[0], y = p.getY() + dir[1];
+                if (m.isCyclic()) {
+                    x = (x + 12) % 12;
+                    y = (y + 9) % 9;
+                }
+                if (!m.isInside(x, y) || m.getPixel(x, y) == OBS) continue;
+                p = new Index2D(x, y);
+                dd.moveSource(p);
+                assertSameField(m, dd);
+            }
+        }
+    }
+
+    @Test
+    void setPixel_obstacleChanges_matchAllDistance() {
+        Random r = new Random(21);
+        for (int round = 0; round < 40; round++) {
+            Map m = RandomMaps.randomMap(r, 10, 10, 0.2, round % 2 == 1);
+            Pixel2D s = new Index2D(r.nextInt(10), r.nextInt(10));
+            DynamicDistance dd = new DynamicDistance(m, s, OBS);
+            for (int step = 0; step < 30; step++) {
+                int x = r.nextInt(10), y = r.nextInt(10);
+                dd.setPixel(x, y, m.getPixel(x, y) == OBS ? 0 : OBS);
+                assertSameField(m, dd);
+            }
+        }
+    }
+
+    @Test
+    void mixedUpdates_matchAllDistance() {
+        Random r = new Random(5);
+        Map m = RandomMaps.randomMap(r, 20, 15, 0.3, true);
+        Pixel2D p = new Index2D(0, 0);
+        DynamicDistance dd = new DynamicDistance(m, p, OBS);
+        for (int step = 0; step < 500; step++) {
+            if (r.nextBoolean()) {
+                int x = r.nextInt(20), y = r.nextInt(15);
+                dd.setPixel(x, y, r.nextInt(3) == 0 ? OBS : 0);
+            } else {
+                dd.moveSource(new Index2D(r.nextInt(20), r.nextInt(15)));
+            }
+            assertSameField(m, dd);
+        }
+    }
+
+    @Test
+    void localChange_repairsOnlyNearbyCells() {
+        Map m = new Map(60, 60, 0);
+        m.setCyclic(false);
+        DynamicDistance dd = new DynamicDistance(m, new Index2D(0, 0), OBS);
+
+        // a new obstacle far from the source on an open board has alternatives all around it
+        dd.setPixel(50, 50, OBS);
+        assertTrue(dd.lastRepairSize() < 10, "repair touched " + dd.lastRepairSize() + " cells");
+        dd.setPixel(50, 50, 0);
+        assertTrue(dd.lastRepairSize() < 10, "repair touched " + dd.lastRepairSize() + " cells");
+        assertSameField(m, dd);
+    }
+
+    @Test
+    void sourceOnObstacle_everythingUnreachable() {
+        Map m = new Map(3, 3, 0);
+        m.setPixel(1, 1, OBS);
+        DynamicDistance dd = new DynamicDistance(m, new Index2D(1, 1), OBS);
+        assertEquals(-1, dd.getDistance(0, 0));
+        assertEquals(OBS, dd.getDistance(1, 1));
+
+        dd.setPixel(1, 1, 0);
+        assertSameField(m, dd);
+        assertEquals(0, dd.getDistance(1, 1));
+    }
+}
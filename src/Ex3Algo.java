@@ -4,8 +4,6 @@ import exe.ex3.game.PacManAlgo;
 import exe.ex3.game.PacmanGame;
 
 import java.awt.Color;
-import java.util.LinkedList;
-import java.util.Queue;
 
 /**
  * Ex3Algo
@@ -19,18 +17,19 @@ public class Ex3Algo implements PacManAlgo {
 
     private static final int CODE = 0;
 
-    // Current game objects (updated every step)
+    // Current game objects (updated every step). The world map persists between steps
+    // and only receives the changed cells, so the flow field toward the dots repairs locally
     private GhostCL[] gs;
     private Map world;
+    private FlowField dotFlow;
 
     // Counters and chosen direction
     private int stepCount = 0;
     private int chosenDir = Game.UP;
 
-    // Cached paths to avoid recomputing BFS every step
-    private Pixel2D[] pathToDots;
-    private Pixel2D[] pathToGhost;
-    private int pathIdx = 2;
+    // Path buffers reused by the searches of every step
+    private final PathBuffer pathToDots = new PathBuffer();
+    private final PathBuffer pathToGhost = new PathBuffer();
 
     // Color codes used by the game board
     private final int OBS = Game.getIntColor(Color.BLUE, CODE);
@@ -38,6 +37,18 @@ public class Ex3Algo implements PacManAlgo {
 
     // Direction constants (as provided by the game engine)
     private final int U = Game.UP, L = Game.LEFT, D = Game.DOWN, R = Game.RIGHT;
+    // The game direction of each Map.DIRS index (y-1, x-1, y+1, x+1)
+    private final int[] STEP_DIR = {D, L, U, R};
+
+    // Within this many steps of a ghost the dots are searched around the ghosts
+    // instead of following the flow field, which does not know about them
+    private static final int GHOST_AVOID_RADIUS = 8;
+
+    // Extra cost of stepping next to a ghost in the weighted dot search
+    private static final int GHOST_NEAR_COST = 20;
+
+    // Ghost distance fields kept while neither the board nor the ghosts move
+    private static final int DISTANCE_CACHE_SIZE = 8;
 
     /**
      * Returns a short description of the algorithm.
@@ -65,7 +76,7 @@ public class Ex3Algo implements PacManAlgo {
     public int move(PacmanGame game) {
 
         gs = game.getGhosts(CODE);
-        world = new Map(game.getGame(CODE));
+        updateWorld(game.getGame(CODE));
 
         Pixel2D pac = pacPos(game);
         Map danger = new Map(world.getWidth(), world.getHeight(), 0);
@@ -81,35 +92,39 @@ public class Ex3Algo implements PacManAlgo {
                 ignoreGhosts = true;
                 chase = true;
                 chosenDir = goDots(pac, danger, ignoreGhosts);
-            } else {
+            } else if (ghostWithin(pac, 3)) {
 
-                // Build distance maps from each ghost
+                // One multi-source BFS gives every cell its distance to the closest ghost,
+                // and which ghost that is
+                Pixel2D[] gPos = new Pixel2D[gs.length];
                 for (int i = 0; i < gs.length; i++) {
-                    Pixel2D gPos = ghostPos(i);
-                    Map2D dMap = world.allDistance(gPos, OBS);
-                    if (dMap == null) continue;
-
-                    int dp = dMap.getPixel(pac);
-
-                    // Ghost is close enough to be dangerous
-                    if (dp < 4 && dp > 0) {
-
-                        // Ghost can be eaten
-                        if (gs[i].remainTimeAsEatable(CODE) > 0) {
-                            if (dp < 3) {
-                                int tmp = goGreen(gPos, pac);
-                                if (tmp != -5) {
-                                    chosenDir = tmp;
-                                    chase = true;
-                                }
+                    gPos[i] = ghostPos(i);
+                }
+                SourceDistances ghosts = world.allDistanceLabeled(gPos, OBS);
+                Map2D dMap = ghosts.getDistances();
+                Map2D nearest = ghosts.getLabels();
+                int dp = dMap.getPixel(pac);
+
+                // The closest ghost is close enough to be dangerous
+                if (dp < 4 && dp > 0) {
+                    int i = nearest.getPixel(pac);
+
+                    // Ghost can be eaten
+                    if (gs[i].remainTimeAsEatable(CODE) > 0) {
+                        if (dp < 3) {
+                            int tmp = goGreen(gPos[i], pac);
+                            if (tmp != -5) {
+                                chosenDir = tmp;
+                                chase = true;
                             }
-                            ignoreGhosts = true;
                         }
-
-                        if (chase || ignoreGhosts) break;
-
-                        // Merge this ghost's distance map into the global danger map
-                        mergeMin(danger, dMap);
+                        ignoreGhosts = true;
+                    } else {
+                        // The danger map is the ghost distance field,
+                        // with unreachable cells and walls set to 0
+                        danger = (Map) dMap;
+                        danger.clamp(0, Integer.MAX_VALUE);
+                        danger.mul(world.notEqualMask(OBS));
                     }
                 }
             }
@@ -127,38 +142,83 @@ public class Ex3Algo implements PacManAlgo {
     }
 
     /**
-     * Moves Pac-Man toward the nearest pink dot.
+     * Brings the persistent world map up to date with the game board.
      *
-     * If a cached path exists, the algorithm continues on it.
-     * Otherwise, it performs BFS to find the closest dot
-     * and moves one step in that direction.
+     * Only the cells that changed (mostly eaten dots) are written, so the
+     * structures that follow the map repair just around them.
      */
-    private int goDots(Pixel2D pac, Map danger, boolean ignore) {
+    private void updateWorld(int[][] board) {
+        if (world == null || world.getWidth() != board.length || world.getHeight() != board[0].length) {
+            world = new Map(board);
+            world.enableDistanceCache(DISTANCE_CACHE_SIZE);
+            dotFlow = new FlowField(world, DOT, OBS);
+            return;
+        }
+        for (int x = 0; x < board.length; x++) {
+            for (int y = 0; y < board[x].length; y++) {
+                if (world.getPixel(x, y) != board[x][y]) world.setPixel(x, y, board[x][y]);
+            }
+        }
+    }
 
-        Map tmp = new Map(world.getMap());
+    /**
+     * Cheap pre-check for the danger analysis.
+     *
+     * Only the cells up to r steps from Pac-Man are explored (once, for all
+     * the ghosts), so when no ghost is that close the full ghost BFS is skipped.
+     */
+    private boolean ghostWithin(Pixel2D pac, int r) {
+        LazyDistance near = world.lazyDistance(pac, OBS);
+        if (near == null) return true;
+        for (int i = 0; i < gs.length; i++) {
+            if (near.distanceTo(ghostPos(i), r) > 0) return true;
+        }
+        return false;
+    }
 
-        Pixel2D cached = nextFromCachedPath(pac);
-        if (cached != null) return dir(cached, pac);
+    /**
+     * Moves Pac-Man toward the nearest pink dot.
+     *
+     * With no ghost within GHOST_AVOID_RADIUS steps (or when they can be
+     * ignored), the flow field gives the first step toward the nearest dot in O(1).
+     * Otherwise a weighted search, where the ghosts' cells are expensive, finds
+     * the nearest dot by a path that keeps away from them, and Pac-Man moves
+     * one step along it. The search is run again every step, as the ghosts move.
+     */
+    private int goDots(Pixel2D pac, Map danger, boolean ignore) {
 
-        // Mark ghost positions as obstacles when needed
-        if (!ignore && gs != null) {
-            for (int i = 0; i < gs.length; i++) {
-                tmp.setPixel(ghostPos(i), OBS);
-            }
+        if (ignore || gs == null || !ghostWithin(pac, GHOST_AVOID_RADIUS)) {
+            int flow = dotFlow.direction(pac);
+            return (flow >= 0) ? STEP_DIR[flow] : flee(pac, danger);
         }
 
-        Map2D d2 = tmp.allDistance(pac, OBS);
-        if (!(d2 instanceof Map)) return flee(pac, danger);
+        // a detour of w+h steps costs no more than stepping on a ghost, and the search
+        // only needs one bucket per cost up to that
+        int ghostCost = Math.max(world.getWidth() + world.getHeight(), 2 * GHOST_NEAR_COST);
+        if (world.nearestWeighted(pac, DOT, OBS, ghostCost(ghostCost), ghostCost, pathToDots) >= 0
+                && pathToDots.length() > 1 && !isGhostCell(pathToDots.cell(1))) {
+            return STEP_DIR[pathToDots.direction(0)];
+        }
+        return flee(pac, danger);
+    }
 
-        Pixel2D target = closestByLayers((Map) d2, tmp, DOT, pac);
-        if (target != null) {
-            pathToDots = tmp.shortestPath(pac, target, OBS);
-            pathIdx = 2;
-            if (pathToDots != null && pathToDots.length > 1) {
-                return dir(pathToDots[1], pac);
+    /**
+     * Cost field for the weighted dot search: a ghost's cell is nearly a wall,
+     * the cells next to it are expensive, the rest of the board is free.
+     */
+    private Map ghostCost(int ghostCost) {
+        Map cost = new Map(world.getWidth(), world.getHeight(), 0);
+        for (int i = 0; i < gs.length; i++) {
+            int g = world.cellOf(ghostPos(i));
+            for (int d = 0; d < 4; d++) {
+                int n = world.step(g, d);
+                if (n >= 0 && cost.getCell(n) < GHOST_NEAR_COST) {
+                    cost.setPixel(world.cellX(n), world.cellY(n), GHOST_NEAR_COST);
+                }
             }
         }
-        return flee(pac, danger);
+        for (int i = 0; i < gs.length; i++) cost.setPixel(ghostPos(i), ghostCost);
+        return cost;
     }
 
     /**
@@ -168,9 +228,8 @@ public class Ex3Algo implements PacManAlgo {
      * Pac-Man moves one step along that path.
      */
     private int goGreen(Pixel2D ghost, Pixel2D pac) {
-        pathToGhost = world.shortestPath(pac, ghost, OBS);
-        if (pathToGhost != null && pathToGhost.length > 2) {
-            return dir(pathToGhost[1], pac);
+        if (world.shortestPathAStar(pac, ghost, OBS, pathToGhost) && pathToGhost.length() > 2) {
+            return STEP_DIR[pathToGhost.direction(0)];
         }
         return -5;
     }
@@ -192,97 +251,18 @@ public class Ex3Algo implements PacManAlgo {
      * with the maximum value in the danger map.
      */
     private Pixel2D bestNeighbor(Map danger, Pixel2D pac) {
-        int w = danger.getWidth(), h = danger.getHeight();
-        int x = pac.getX(), y = pac.getY();
-
-        Pixel2D best = pac;
-        int bestVal = danger.getPixel(pac);
-
-        Pixel2D[] ns = {
-                new Index2D((x + 1) % w, y),
-                new Index2D((x - 1 + w) % w, y),
-                new Index2D(x, (y + 1) % h),
-                new Index2D(x, (y - 1 + h) % h)
-        };
-
-        for (Pixel2D p : ns) {
-            int v = danger.getPixel(p);
-            if (v >= bestVal) {
-                bestVal = v;
-                best = p;
-            }
-        }
-        return best;
-    }
-
-    /**
-     * Merges ghost distance maps.
-     *
-     * For each cell, the minimal distance to any ghost is kept.
-     * This creates a combined danger map.
-     */
-    private void mergeMin(Map acc, Map2D oneGhost) {
-        int w = acc.getWidth(), h = acc.getHeight();
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                int d = oneGhost.getPixel(new Index2D(x, y));
-                if (d <= 0 || d == OBS) continue;
-                int cur = acc.getPixel(x, y);
-                if (cur == 0 || d < cur) acc.setPixel(x, y, d);
-            }
-        }
-    }
-
-    /**
-     * Finds the closest target using BFS layers.
-     *
-     * The search expands layer by layer until
-     * a cell with the required color is found.
-     */
-    private Pixel2D closestByLayers(Map dist, Map real, int color, Pixel2D start) {
-        int w = dist.getWidth(), h = dist.getHeight();
-        boolean cyc = world.isCyclic();
-
-        Queue<Pixel2D> q = new LinkedList<>();
-        q.add(start);
-
-        while (!q.isEmpty()) {
-            Pixel2D c = q.poll();
-            int want = dist.getPixel(c) + 1;
-            int x = c.getX(), y = c.getY();
-
-            Pixel2D[] ns = {
-                    new Index2D((x + 1) % w, y),
-                    new Index2D((x - 1 + w) % w, y),
-                    new Index2D(x, (y + 1) % h),
-                    new Index2D(x, (y - 1 + h) % h)
-            };
-
-            for (Pixel2D p : ns) {
-                if (dist.getPixel(p) == want) {
-                    if (real.getPixel(p) == color) return p;
-                    q.add(p);
-                }
-            }
-        }
-        return null;
+        return danger.argmaxNeighbor(pac);
     }
 
     /**
-     * Continues movement on a cached path.
-     *
-     * This reduces repeated BFS computations
-     * when Pac-Man is already moving toward a target.
+     * Returns true if a ghost stands on the given packed cell.
      */
-    private Pixel2D nextFromCachedPath(Pixel2D pac) {
-        if (pathToDots != null && pathIdx < pathToDots.length) {
-            if (pathToDots[pathIdx - 1].equals(pac)) {
-                return pathToDots[pathIdx++];
-            }
+    private boolean isGhostCell(int cell) {
+        if (gs == null) return false;
+        for (int i = 0; i < gs.length; i++) {
+            if (world.cellOf(ghostPos(i)) == cell) return true;
         }
-        pathIdx = 2;
-        pathToDots = null;
-        return null;
+        return false;
     }
 
     /**
@@ -290,7 +270,7 @@ public class Ex3Algo implements PacManAlgo {
      */
     private Pixel2D ghostPos(int i) {
         String[] a = gs[i].getPos(CODE).split(",");
-        return new Index2D(Integer.parseInt(a[0]), Integer.parseInt(a[1]));
+        return world.pixel(world.cellOf(Integer.parseInt(a[0]), Integer.parseInt(a[1])));
     }
 
     /**
@@ -298,7 +278,7 @@ public class Ex3Algo implements PacManAlgo {
      */
     private Pixel2D pacPos(PacmanGame game) {
         String[] a = game.getPos(CODE).split(",");
-        return new Index2D(Integer.parseInt(a[0]), Integer.parseInt(a[1]));
+        return world.pixel(world.cellOf(Integer.parseInt(a[0]), Integer.parseInt(a[1])));
     }
 
     /**
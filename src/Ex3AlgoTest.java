@@ -1,4 +1,5 @@
 import exe.ex3.game.Game;
+import exe.ex3.game.GhostCL;
 import exe.ex3.game.PacManAlgo;
 import exe.ex3.game.PacmanGame;
 import org.junit.jupiter.api.Test;
@@ -55,7 +56,20 @@ public class Ex3AlgoTest {
         assertEquals(DOWN, dir);
     }
 
+    @Test
+    public void goesAroundAGhostStandingBeforeTheNearestDot() {
+        PacManAlgo algo = new Ex3Algo();
+        // the left dot is nearer, but a ghost stands between it and Pac-Man
+        PacmanGame g = stubGame(boardCorridorTwoDots(), "7,1", stubGhost("3,1"));
+        int dir = algo.move(g);
+        assertEquals(RIGHT, dir);
+    }
+
     private static PacmanGame stubGame(int[][] board, String pacPos) {
+        return stubGame(board, pacPos, (GhostCL[]) null);
+    }
+
+    private static PacmanGame stubGame(int[][] board, String pacPos, GhostCL... ghosts) {
         ClassLoader cl = PacmanGame.class.getClassLoader();
         return (PacmanGame) Proxy.newProxyInstance(
                 cl,
@@ -64,21 +78,37 @@ public class Ex3AlgoTest {
                     String name = method.getName();
                     if (name.equals("getGame")) return board;
                     if (name.equals("getPos")) return pacPos;
-                    if (name.equals("getGhosts")) return null;
-                    Class<?> rt = method.getReturnType();
-                    if (rt == boolean.class) return false;
-                    if (rt == int.class) return 0;
-                    if (rt == long.class) return 0L;
-                    if (rt == double.class) return 0.0;
-                    if (rt == float.class) return 0f;
-                    if (rt == short.class) return (short) 0;
-                    if (rt == byte.class) return (byte) 0;
-                    if (rt == char.class) return (char) 0;
-                    return null;
+                    if (name.equals("getGhosts")) return ghosts;
+                    return defaultValue(method.getReturnType());
                 }
         );
     }
 
+    private static GhostCL stubGhost(String pos) {
+        ClassLoader cl = GhostCL.class.getClassLoader();
+        return (GhostCL) Proxy.newProxyInstance(
+                cl,
+                new Class[]{GhostCL.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getPos")) return pos;
+                    if (method.getName().equals("remainTimeAsEatable")) return -1.0;
+                    return defaultValue(method.getReturnType());
+                }
+        );
+    }
+
+    private static Object defaultValue(Class<?> rt) {
+        if (rt == boolean.class) return false;
+        if (rt == int.class) return 0;
+        if (rt == long.class) return 0L;
+        if (rt == double.class) return 0.0;
+        if (rt == float.class) return 0f;
+        if (rt == short.class) return (short) 0;
+        if (rt == byte.class) return (byte) 0;
+        if (rt == char.class) return (char) 0;
+        return null;
+    }
+
     private static int[][] boardSimpleRightDot() {
         int OBS = Game.getIntColor(Color.BLUE, CODE);
         int DOT = Game.getIntColor(Color.PINK, CODE);
@@ -99,6 +129,25 @@ public class Ex3AlgoTest {
         return b;
     }
 
+    private static int[][] boardCorridorTwoDots() {
+        int OBS = Game.getIntColor(Color.BLUE, CODE);
+        int DOT = Game.getIntColor(Color.PINK, CODE);
+
+        int w = 15, h = 3;
+        int[][] b = new int[w][h];
+
+        for (int x = 0; x < w; x++) {
+            b[x][0] = OBS;
+            b[x][h - 1] = OBS;
+        }
+        b[0][1] = OBS;
+        b[w - 1][1] = OBS;
+
+        b[2][1] = DOT;
+        b[13][1] = DOT;
+        return b;
+    }
+
     private static int[][] boardCorridorOnlyUp() {
         int OBS = Game.getIntColor(Color.BLUE, CODE);
         int DOT = Game.getIntColor(Color.PINK, CODE);
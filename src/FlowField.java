@@ -0,0 +1,95 @@
+/**
+ * A flow field toward the nearest target cell (e.g. the nearest dot): for every walkable
+ * cell, the direction of a first step on a shortest path to the closest cell holding
+ * targetColor.
+ *
+ * The field is a multi-source DynamicDistance from all the target cells, built with one BFS.
+ * It follows the map as a listener: a target that is eaten (its cell changes color) stops
+ * being a source and a new obstacle blocks its cell, and in both cases only the cells whose
+ * distance changes are repaired. A direction is then read in O(1) by looking for the
+ * neighbour one step closer. Bulk changes of the map (fill, init, ...) rebuild the field
+ * lazily on the next query.
+ */
+public class FlowField implements MapListener {
+    private final Map _map;
+    private final int _targetColor, _obsColor;
+    private DynamicDistance _dist;   // null: rebuild on the next query
+
+    /**
+     * Builds the field of map toward targetColor, avoiding obsColor, and starts following
+     * the changes of map (until detach()).
+     */
+    public FlowField(Map map, int targetColor, int obsColor) {
+        _map = map;
+        _targetColor = targetColor;
+        _obsColor = obsColor;
+        map.addListener(this);
+    }
+
+    /**
+     * Stops following the map; the field is not updated any more.
+     */
+    public void detach() {
+        _map.removeListener(this);
+    }
+
+    /**
+     * @return the direction (an index into Map.DIRS: 0 y-1, 1 x-1, 2 y+1, 3 x+1) of the first
+     * step from (x,y) toward the nearest target, or -1 if (x,y) is a target itself, an
+     * obstacle, or no target is reachable. Ties are broken by DIRS order.
+     */
+    public int direction(int x, int y) {
+        int c = _map.cellOf(x, y);
+        DynamicDistance dist = field();
+        int d = dist.distance(c);
+        if (d <= 0) return -1;
+        for (int dir = 0; dir < Map.DIRS.length; dir++) {
+            int n = _map.step(c, dir);
+            if (n >= 0 && dist.distance(n) == d - 1) return dir;
+        }
+        return -1;   // not reached: a cell at distance d has a neighbour at d-1
+    }
+
+    public int direction(Pixel2D p) {
+        return direction(p.getX(), p.getY());
+    }
+
+    /**
+     * @return the number of steps from (x,y) to the nearest target, or -1 if it is an
+     * obstacle or no target is reachable.
+     */
+    public int distance(int x, int y) {
+        return field().distance(_map.cellOf(x, y));
+    }
+
+    public int distance(Pixel2D p) {
+        return distance(p.getX(), p.getY());
+    }
+
+    @Override
+    public void cellChanged(int cell, int oldV, int newV) {
+        if (_dist == null) return;
+        // obstacle status first, so that a target turning into an obstacle is repaired as one
+        _dist.cellChanged(cell, oldV, newV);
+        if (oldV == _targetColor) _dist.removeSource(cell);
+        else if (newV == _targetColor) _dist.addSource(cell);
+    }
+
+    @Override
+    public void mapChanged() {
+        _dist = null;
+    }
+
+    private DynamicDistance field() {
+        if (_dist == null) {
+            int[] cells = _map.cells();
+            int[] targets = new int[cells.length];
+            int count = 0;
+            for (int c = 0; c < cells.length; c++) {
+                if (cells[c] == _targetColor) targets[count++] = c;
+            }
+            _dist = new DynamicDistance(_map, _obsColor, targets, count);
+        }
+        return _dist;
+    }
+}
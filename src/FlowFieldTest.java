@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlowFieldTest {
+
+    private static final int OBS = 1, DOT = 3;
+
+    private static void assertMatchesBfs(Map m, FlowField f) {
+        List<Pixel2D> dots = new ArrayList<>();
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                if (m.getPixel(x, y) == DOT) dots.add(new Index2D(x, y));
+            }
+        }
+        Map2D d = m.allDistance(dots.toArray(new Pixel2D[0]), OBS);
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                int expected = (m.getPixel(x, y) == OBS) ? -1 : d.getPixel(x, y);
+                assertEquals(expected, f.distance(x, y), "at (" + x + "," + y + ")");
+
+                int dir = f.direction(x, y);
+                if (expected <= 0) {
+                    assertEquals(-1, dir);
+                } else {
+                    int n = m.step(m.cellOf(x, y), dir);
+                    assertEquals(expected - 1, f.distance(m.cellX(n), m.cellY(n)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void eatingDotsAndEditingWalls_matchesMultiSourceBfs() {
+        Random r = new Random(21);
+        for (int round = 0; round < 20; round++) {
+            int w = 4 + r.nextInt(15), h = 4 + r.nextInt(12);
+            Map m = RandomMaps.randomMap(r, w, h, 0.25, round % 2 == 0);
+            RandomMaps.scatter(r, m, DOT, 0.13);
+            FlowField f = new FlowField(m, DOT, OBS);
+            assertMatchesBfs(m, f);
+            for (int step = 0; step < 40; step++) {
+                int x = r.nextInt(w), y = r.nextInt(h);
+                int v = m.getPixel(x, y);
+                // mostly eat dots, sometimes move walls or drop new dots
+                if (v == DOT) m.setPixel(x, y, 0);
+                else m.setPixel(x, y, r.nextBoolean() ? DOT : (v == OBS ? 0 : OBS));
+                assertMatchesBfs(m, f);
+            }
+        }
+    }
+
+    @Test
+    void bulkChange_rebuilds_andDetachStopsFollowing() {
+        Map m = new Map(6, 1, 0);
+        m.setCyclic(false);
+        m.setPixel(5, 0, DOT);
+        FlowField f = new FlowField(m, DOT, OBS);
+        assertEquals(3, f.direction(0, 0));
+        assertEquals(5, f.distance(0, 0));
+
+        m.fill(new Index2D(0, 0), DOT);
+        assertEquals(0, f.distance(0, 0));
+        assertEquals(-1, f.direction(0, 0));
+
+        f.detach();
+        m.init(6, 1, 0);
+        assertEquals(0, f.distance(0, 0));
+    }
+}
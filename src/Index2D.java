@@ -1,5 +1,5 @@
 public class Index2D implements Pixel2D {
-    private int _x, _y;
+    private final int _x, _y;
 
     public Index2D() { this(0, 0); }
 
@@ -0,0 +1,368 @@
+import java.util.Arrays;
+
+/**
+ * A compressed view of a maze: the walkable cells of a Map which are junctions or
+ * dead ends (any cell without exactly two walkable neighbours) become the nodes of a
+ * weighted graph, and the 1-wide corridors between them become edges which keep
+ * their list of cells. A loop without any junction gets one of its cells as a node.
+ *
+ * Distance and path queries run Dijkstra on this (much smaller) graph; a cell inside a
+ * corridor is handled through its offset from the two ends of that corridor.
+ * The graph is a snapshot: later changes of the map are not reflected.
+ * Queries reuse internal arrays, so an instance should be used by one thread at a time.
+ */
+public class JunctionGraph {
+    private final int _w, _h;
+    private final PixelTable _pixels;  // of the map the graph was built from
+
+    private final int[] _nodeOf;     // cell -> node, -1 if not a node
+    private int[] _nodeCell = new int[16];
+    private int _nodes;
+
+    private int[] _edgeU = new int[16], _edgeV = new int[16], _edgeLen = new int[16];
+    private int[][] _edgeCells = new int[16][];  // corridor cells, from the U end to the V end
+    private int _edges;
+
+    private final int[] _edgeOf;     // corridor cell -> edge, -1 for nodes/obstacles
+    private final int[] _offsetOf;   // corridor cell -> steps from the U end of its edge
+
+    private int[] _adjStart, _adjEdge; // node -> incident edges (CSR)
+
+    // Dijkstra state, stamped like MapBfs
+    private int[] _stamp, _dist, _predEdge, _seedSide;
+    private int _epoch;
+    private long[] _heap = new long[64];
+    private int _heapSize;
+
+    /**
+     * Builds the junction graph of map, where obsColor marks the obstacles.
+     */
+    public JunctionGraph(Map map, int obsColor) {
+        _w = map.getWidth();
+        _h = map.getHeight();
+        _pixels = map.pixels();
+        int[] cells = map.cells();
+        int n = cells.length;
+        _nodeOf = new int[n];
+        _edgeOf = new int[n];
+        _offsetOf = new int[n];
+        Arrays.fill(_nodeOf, -1);
+        Arrays.fill(_edgeOf, -1);
+
+        int[] nb = new int[4];
+        for (int c = 0; c < n; c++) {
+            if (cells[c] != obsColor && walkableNeighbours(map, cells, obsColor, c, nb) != 2) addNode(c);
+        }
+        for (int u = 0; u < _nodes; u++) trace(map, cells, obsColor, u, nb);
+        // what is left are loops made only of corridor cells
+        for (int c = 0; c < n; c++) {
+            if (cells[c] != obsColor && _nodeOf[c] == -1 && _edgeOf[c] == -1) {
+                trace(map, cells, obsColor, addNode(c), nb);
+            }
+        }
+        buildAdjacency();
+
+        _stamp = new int[_nodes];
+        _dist = new int[_nodes];
+        _predEdge = new int[_nodes];
+        _seedSide = new int[_nodes];
+    }
+
+    /**
+     * @return the number of nodes (junctions, dead ends and loop anchors).
+     */
+    public int nodeCount() {
+        return _nodes;
+    }
+
+    /**
+     * @return the number of corridor edges.
+     */
+    public int edgeCount() {
+        return _edges;
+    }
+
+    /**
+     * @return true iff p is a node of this graph (and not a corridor cell or an obstacle).
+     */
+    public boolean isNode(Pixel2D p) {
+        int c = cell(p);
+        return c >= 0 && _nodeOf[c] != -1;
+    }
+
+    /**
+     * @return the shortest path distance between a and b, or -1 if one of them is not
+     * walkable or b can not be reached from a.
+     */
+    public int distance(Pixel2D a, Pixel2D b) {
+        int ca = cell(a), cb = cell(b);
+        if (!walkable(ca) || !walkable(cb)) return -1;
+        long r = search(ca, cb);
+        return (r < 0) ? -1 : (int) (r >>> 32);
+    }
+
+    /**
+     * Same contract as Map.shortestPath(): the cells of a shortest path from a to b
+     * (inclusive), or null if there is none.
+     */
+    public Pixel2D[] shortestPath(Pixel2D a, Pixel2D b) {
+        int ca = cell(a), cb = cell(b);
+        if (!walkable(ca) || !walkable(cb)) return null;
+        if (ca == cb) return toPixels(new int[]{ca});
+        long r = search(ca, cb);
+        if (r < 0) return null;
+
+        int len = (int) (r >>> 32);
+        int end = (int) r;   // -2: a and b on the same corridor, else the node the path leaves the graph at
+        int[] path = new int[len + 1];
+        int i = len;
+        path[i] = cb;
+
+        if (end == -2) {
+            int e = _edgeOf[ca];
+            int step = (_offsetOf[cb] > _offsetOf[ca]) ? -1 : 1;
+            for (int k = _offsetOf[cb] + step; i > 0; k += step) path[--i] = _edgeCells[e][k - 1];
+            return toPixels(path);
+        }
+
+        // b back to the node the path reaches it from
+        if (cb != _nodeCell[end]) i = walkCorridor(path, i, cb, end);
+        // back through the graph
+        int v = end;
+        while (_predEdge[v] != -1) {
+            int e = _predEdge[v];
+            // a self loop never shortens a path, so the edge has two different ends
+            boolean fromU = _edgeV[e] == v;
+            int u = fromU ? _edgeU[e] : _edgeV[e];
+            int[] cs = _edgeCells[e];
+            for (int k = 0; k < cs.length; k++) path[--i] = fromU ? cs[cs.length - 1 - k] : cs[k];
+            path[--i] = _nodeCell[u];
+            v = u;
+        }
+        // the first node back to a
+        if (ca != _nodeCell[v]) {
+            int e = _edgeOf[ca];
+            int k = _offsetOf[ca];
+            int[] cs = _edgeCells[e];
+            if (_seedSide[v] == 0) {
+                for (int j = 1; j < k; j++) path[--i] = cs[j - 1];
+            } else {
+                for (int j = cs.length; j > k; j--) path[--i] = cs[j - 1];
+            }
+            path[--i] = ca;
+        }
+        return toPixels(path);
+    }
+
+    /**
+     * Dijkstra from a's anchor node(s) until b's best anchor is settled.
+     * @return -1 if unreachable, else (distance << 32 | last node), with -2 as the last node
+     * when the best path stays inside a's corridor.
+     */
+    private long search(int ca, int cb) {
+        if (ca == cb) return 0;
+        if (++_epoch == 0) {
+            Arrays.fill(_stamp, 0);
+            _epoch = 1;
+        }
+        _heapSize = 0;
+
+        long best = Long.MAX_VALUE;
+        int bestEnd = -1;
+        if (_edgeOf[ca] != -1 && _edgeOf[ca] == _edgeOf[cb]) {
+            best = Math.abs(_offsetOf[ca] - _offsetOf[cb]);
+            bestEnd = -2;
+        }
+
+        if (_nodeOf[ca] != -1) {
+            relax(_nodeOf[ca], 0, -1, 0);
+        } else {
+            int e = _edgeOf[ca];
+            relax(_edgeU[e], _offsetOf[ca], -1, 0);
+            relax(_edgeV[e], _edgeLen[e] - _offsetOf[ca], -1, 1);
+        }
+
+        int bNode = _nodeOf[cb], bU = -1, bV = -1, bOffU = 0, bOffV = 0;
+        if (bNode == -1) {
+            int e = _edgeOf[cb];
+            bU = _edgeU[e];
+            bV = _edgeV[e];
+            bOffU = _offsetOf[cb];
+            bOffV = _edgeLen[e] - bOffU;
+        }
+
+        while (_heapSize > 0) {
+            long top = heapPop();
+            int d = (int) (top >>> 32), v = (int) top;
+            if (d != _dist[v]) continue;
+            if (d >= best) break;
+
+            if (v == bNode) { best = d; bestEnd = v; break; }
+            if (v == bU && d + bOffU < best) { best = d + bOffU; bestEnd = v; }
+            if (v == bV && d + bOffV < best) { best = d + bOffV; bestEnd = v; }
+
+            for (int k = _adjStart[v]; k < _adjStart[v + 1]; k++) {
+                int e = _adjEdge[k];
+                int o = (_edgeU[e] == v) ? _edgeV[e] : _edgeU[e];
+                relax(o, d + _edgeLen[e], e, 0);
+            }
+        }
+        if (bestEnd == -1) return -1;
+        return best << 32 | (bestEnd & 0xFFFFFFFFL);
+    }
+
+    private void relax(int v, int d, int viaEdge, int side) {
+        if (_stamp[v] == _epoch && _dist[v] <= d) return;
+        _stamp[v] = _epoch;
+        _dist[v] = d;
+        _predEdge[v] = viaEdge;
+        _seedSide[v] = side;
+        heapPush((long) d << 32 | v);
+    }
+
+    /**
+     * Fills path[i-1], path[i-2]... with the corridor cells from cell c (exclusive)
+     * towards node, ending with the node cell itself.
+     * @return the new index of the first filled entry.
+     */
+    private int walkCorridor(int[] path, int i, int c, int node) {
+        int e = _edgeOf[c];
+        int k = _offsetOf[c];
+        int[] cs = _edgeCells[e];
+        boolean toU = (_edgeU[e] == node) && (_edgeV[e] != node || k <= _edgeLen[e] - k);
+        if (toU) {
+            for (int j = k - 1; j >= 1; j--) path[--i] = cs[j - 1];
+        } else {
+            for (int j = k + 1; j < _edgeLen[e]; j++) path[--i] = cs[j - 1];
+        }
+        path[--i] = _nodeCell[node];
+        return i;
+    }
+
+    private void trace(Map map, int[] cells, int obsColor, int u, int[] nb) {
+        int cu = _nodeCell[u];
+        int cnt = walkableNeighbours(map, cells, obsColor, cu, nb);
+        int[] first = Arrays.copyOf(nb, cnt);
+        for (int start : first) {
+            if (_nodeOf[start] != -1) {
+                // two adjacent nodes: add the edge once, from the lower cell
+                if (cu < start) addEdge(u, _nodeOf[start], new int[0]);
+                continue;
+            }
+            if (_edgeOf[start] != -1) continue; // traced from its other end already
+
+            int[] run = new int[8];
+            int len = 0, prev = cu, cur = start;
+            while (_nodeOf[cur] == -1) {
+                if (len == run.length) run = Arrays.copyOf(run, len * 2);
+                run[len++] = cur;
+                walkableNeighbours(map, cells, obsColor, cur, nb);
+                int next = (nb[0] != prev) ? nb[0] : nb[1];
+                prev = cur;
+                cur = next;
+            }
+            int e = addEdge(u, _nodeOf[cur], Arrays.copyOf(run, len));
+            for (int k = 0; k < len; k++) {
+                _edgeOf[run[k]] = e;
+                _offsetOf[run[k]] = k + 1;
+            }
+        }
+    }
+
+    /**
+     * Collects the distinct walkable neighbours of c (other than c itself) into nb.
+     * @return their number.
+     */
+    private static int walkableNeighbours(Map map, int[] cells, int obsColor, int c, int[] nb) {
+        int h = map.getHeight();
+        int x = c / h, y = c - x * h;
+        int cnt = 0;
+        for (int d = 0; d < 4; d++) {
+            int n = map.neighbour(c, x, y, d);
+            if (n < 0 || n == c || cells[n] == obsColor) continue;
+            boolean seen = false;
+            for (int j = 0; j < cnt; j++) seen |= nb[j] == n;
+            if (!seen) nb[cnt++] = n;
+        }
+        return cnt;
+    }
+
+    private int addNode(int c) {
+        if (_nodes == _nodeCell.length) _nodeCell = Arrays.copyOf(_nodeCell, _nodes * 2);
+        _nodeCell[_nodes] = c;
+        _nodeOf[c] = _nodes;
+        return _nodes++;
+    }
+
+    private int addEdge(int u, int v, int[] interior) {
+        if (_edges == _edgeU.length) {
+            int cap = _edges * 2;
+            _edgeU = Arrays.copyOf(_edgeU, cap);
+            _edgeV = Arrays.copyOf(_edgeV, cap);
+            _edgeLen = Arrays.copyOf(_edgeLen, cap);
+            _edgeCells = Arrays.copyOf(_edgeCells, cap);
+        }
+        _edgeU[_edges] = u;
+        _edgeV[_edges] = v;
+        _edgeLen[_edges] = interior.length + 1;
+        _edgeCells[_edges] = interior;
+        return _edges++;
+    }
+
+    private void buildAdjacency() {
+        _adjStart = new int[_nodes + 1];
+        for (int e = 0; e < _edges; e++) {
+            _adjStart[_edgeU[e] + 1]++;
+            if (_edgeV[e] != _edgeU[e]) _adjStart[_edgeV[e] + 1]++;
+        }
+        for (int v = 0; v < _nodes; v++) _adjStart[v + 1] += _adjStart[v];
+        _adjEdge = new int[_adjStart[_nodes]];
+        int[] fill = Arrays.copyOf(_adjStart, _nodes);
+        for (int e = 0; e < _edges; e++) {
+            _adjEdge[fill[_edgeU[e]]++] = e;
+            if (_edgeV[e] != _edgeU[e]) _adjEdge[fill[_edgeV[e]]++] = e;
+        }
+    }
+
+    private void heapPush(long key) {
+        if (_heapSize == _heap.length) _heap = Arrays.copyOf(_heap, _heapSize * 2);
+        int i = _heapSize++;
+        while (i > 0 && _heap[(i - 1) / 2] > key) {
+            _heap[i] = _heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        _heap[i] = key;
+    }
+
+    private long heapPop() {
+        long top = _heap[0];
+        long last = _heap[--_heapSize];
+        int i = 0;
+        while (2 * i + 1 < _heapSize) {
+            int c = 2 * i + 1;
+            if (c + 1 < _heapSize && _heap[c + 1] < _heap[c]) c++;
+            if (_heap[c] >= last) break;
+            _heap[i] = _heap[c];
+            i = c;
+        }
+        _heap[i] = last;
+        return top;
+    }
+
+    private int cell(Pixel2D p) {
+        if (p == null) return -1;
+        int x = p.getX(), y = p.getY();
+        if (x < 0 || y < 0 || x >= _w || y >= _h) return -1;
+        return x * _h + y;
+    }
+
+    private boolean walkable(int c) {
+        return c >= 0 && (_nodeOf[c] != -1 || _edgeOf[c] != -1);
+    }
+
+    private Pixel2D[] toPixels(int[] path) {
+        Pixel2D[] ans = new Pixel2D[path.length];
+        for (int i = 0; i < path.length; i++) ans[i] = _pixels.get(path[i]);
+        return ans;
+    }
+}
@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JunctionGraphTest {
+
+    private static final int OBS = 1;
+
+    /**
+     * A perfect maze (1-wide corridors) carved by a random DFS on a (2k+1)x(2k+1) grid.
+     */
+    private static Map maze(long seed, int k) {
+        int n = 2 * k + 1;
+        Map m = new Map(n, n, OBS);
+        Random r = new Random(seed);
+        int[] stack = new int[k * k];
+        boolean[] seen = new boolean[k * k];
+        int sp = 0;
+        stack[sp++] = 0;
+        seen[0] = true;
+        m.setPixel(1, 1, 0);
+        int[][] dirs = {{0, -1}, {-1, 0}, {0, 1}, {1, 0}};
+        while (sp > 0) {
+            int c = stack[sp - 1], cx = c / k, cy = c % k;
+            int[] opts = new int[4];
+            int cnt = 0;
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + dirs[d][0], ny = cy + dirs[d][1];
+                if (nx >= 0 && ny >= 0 && nx < k && ny < k && !seen[nx * k + ny]) opts[cnt++] = d;
+            }
+            if (cnt == 0) {
+                sp--;
+                continue;
+            }
+            int d = opts[r.nextInt(cnt)];
+            int nx = cx + dirs[d][0], ny = cy + dirs[d][1];
+            seen[nx * k + ny] = true;
+            m.setPixel(2 * cx + 1 + dirs[d][0], 2 * cy + 1 + dirs[d][1], 0);
+            m.setPixel(2 * nx + 1, 2 * ny + 1, 0);
+            stack[sp++] = nx * k + ny;
+        }
+        return m;
+    }
+
+    private static void assertMatchesBfs(Map m, JunctionGraph g, Random r, int queries) {
+        int w = m.getWidth(), h = m.getHeight();
+        for (int q = 0; q < queries; q++) {
+            Pixel2D a = new Index2D(r.nextInt(w), r.nextInt(h));
+            Pixel2D b = new Index2D(r.nextInt(w), r.nextInt(h));
+            Pixel2D[] expected = m.shortestPath(a, b, OBS);
+            Pixel2D[] path = g.shortestPath(a, b);
+            if (expected == null) {
+                assertNull(path);
+                assertEquals(-1, g.distance(a, b));
+                continue;
+            }
+            assertEquals(expected.length - 1, g.distance(a, b));
+            assertNotNull(path);
+            assertEquals(expected.length, path.length);
+            assertEquals(a, path[0]);
+            assertEquals(b, path[path.length - 1]);
+            for (int i = 1; i < path.length; i++) {
+                assertNotEquals(OBS, m.getPixel(path[i]));
+                assertEquals(1, m.allDistance(path[i - 1], OBS).getPixel(path[i]));
+            }
+        }
+    }
+
+    @Test
+    void maze_fewNodes_andMatchesBfs() {
+        Map m = maze(3, 12);
+        m.setCyclic(false);
+        JunctionGraph g = new JunctionGraph(m, OBS);
+        int walkable = 0;
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                if (m.getPixel(x, y) != OBS) walkable++;
+            }
+        }
+        assertTrue(g.nodeCount() * 2 < walkable);
+        assertMatchesBfs(m, g, new Random(1), 300);
+    }
+
+    @Test
+    void randomBoards_matchBfs() {
+        for (int seed = 0; seed < 60; seed++) {
+            Random r = new Random(seed);
+            int w = 1 + r.nextInt(10), h = 1 + r.nextInt(10);
+            Map m = new Map(w, h, 0);
+            m.setCyclic(r.nextBoolean());
+            double p = 0.2 + r.nextDouble() * 0.4;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    if (r.nextDouble() < p) m.setPixel(x, y, OBS);
+                }
+            }
+            assertMatchesBfs(m, new JunctionGraph(m, OBS), r, 80);
+        }
+    }
+
+    @Test
+    void loopWithoutJunctions_getsOneNode() {
+        Map m = new Map(3, 3, 0);
+        m.setCyclic(false);
+        m.setPixel(1, 1, OBS);
+        JunctionGraph g = new JunctionGraph(m, OBS);
+        assertEquals(1, g.nodeCount());
+        assertEquals(1, g.edgeCount());
+        assertEquals(4, g.distance(new Index2D(0, 0), new Index2D(2, 2)));
+        assertEquals(2, g.distance(new Index2D(0, 1), new Index2D(1, 0)));
+        assertEquals(5, g.shortestPath(new Index2D(1, 0), new Index2D(1, 2)).length);
+    }
+
+    @Test
+    void obstaclesAndOutside_returnNothing() {
+        Map m = maze(1, 3);
+        JunctionGraph g = new JunctionGraph(m, OBS);
+        assertEquals(-1, g.distance(new Index2D(0, 0), new Index2D(1, 1)));
+        assertNull(g.shortestPath(new Index2D(1, 1), new Index2D(9, 9)));
+        assertFalse(g.isNode(new Index2D(0, 0)));
+        assertEquals(0, g.distance(new Index2D(1, 1), new Index2D(1, 1)));
+    }
+}
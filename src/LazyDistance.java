@@ -0,0 +1,133 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * BFS distances from one source cell, computed on demand (see Map.lazyDistance()).
+ *
+ * The BFS frontier is kept between calls: distanceTo() expands it only until the asked cell
+ * is discovered, so a query near the source is cheap and a later query continues from where
+ * the previous one stopped instead of starting over. The discovered cells, in BFS order
+ * (non decreasing distance), can be read by index or iterated - which also expands lazily,
+ * so a scan that stops early never pays for the rest of the map.
+ *
+ * The search runs on the map's epoch-stamped lazy workspace: creating one is O(1), and the
+ * work done is proportional to the cells discovered. The next Map.lazyDistance() call takes
+ * that workspace over (as does an init() of the map), after which this object throws
+ * IllegalStateException.
+ * The distances are those of the map when the object was created: changes of the map made
+ * meanwhile are not followed, and a new LazyDistance should be taken after them.
+ */
+public class LazyDistance implements Iterable<Pixel2D> {
+    private final Map _map;
+    private final MapBfs _bfs;
+    private final int _epoch;
+    private final int _obsColor;
+    private final int _source;
+
+    LazyDistance(Map map, MapBfs bfs, int source, int obsColor) {
+        _map = map;
+        _bfs = bfs;
+        _obsColor = obsColor;
+        _source = source;
+        _epoch = bfs.startLazy(source);
+    }
+
+    /**
+     * @return the source cell.
+     */
+    public Pixel2D getSource() {
+        return _map.pixel(_source);
+    }
+
+    /**
+     * @param cell a packed cell id (see Map.cellOf()).
+     * @return the number of steps from the source to cell, or -1 if it is an obstacle or
+     * unreachable. Expands the BFS until cell is discovered (or the component is exhausted).
+     */
+    public int distanceTo(int cell) {
+        checkCurrent();
+        if (cell < 0 || cell >= _map.getWidth() * _map.getHeight()) return -1;
+        while (_bfs.distance(cell) < 0) {
+            if (!_bfs.expandNext(_obsColor)) break;
+        }
+        return _bfs.distance(cell);
+    }
+
+    public int distanceTo(Pixel2D p) {
+        if (p == null || !_map.isInside(p)) return -1;
+        return distanceTo(_map.cellOf(p));
+    }
+
+    /**
+     * Bounded distanceTo(): the BFS is expanded no further than limit steps, so a far (or
+     * unreachable) cell costs only the cells within the limit.
+     * @return the distance from the source to cell if it is at most limit, -1 otherwise.
+     */
+    public int distanceTo(int cell, int limit) {
+        checkCurrent();
+        if (cell < 0 || cell >= _map.getWidth() * _map.getHeight()) return -1;
+        // expanding every cell closer than limit discovers every cell within it
+        while (_bfs.distance(cell) < 0) {
+            int next = _bfs.frontierDistance();
+            if (next < 0 || next >= limit) break;
+            _bfs.expandNext(_obsColor);
+        }
+        int d = _bfs.distance(cell);
+        return (d <= limit) ? d : -1;
+    }
+
+    public int distanceTo(Pixel2D p, int limit) {
+        if (p == null || !_map.isInside(p)) return -1;
+        return distanceTo(_map.cellOf(p), limit);
+    }
+
+    /**
+     * @return the i'th cell in BFS order (0 is the source) as a packed cell id, or -1 if fewer
+     * than i+1 cells are reachable. Expands the BFS as needed.
+     */
+    public int cell(int i) {
+        checkCurrent();
+        while (i >= _bfs.visitedCount()) {
+            if (!_bfs.expandNext(_obsColor)) break;
+        }
+        return (i >= 0 && i < _bfs.visitedCount()) ? _bfs.visited(i) : -1;
+    }
+
+    /**
+     * @return the number of cells discovered so far (the BFS work done).
+     */
+    public int discovered() {
+        checkCurrent();
+        return _bfs.visitedCount();
+    }
+
+    /**
+     * Iterates the reachable cells in BFS order, source first, expanding the BFS lazily.
+     * The pixels are the shared instances of Map.pixel().
+     */
+    @Override
+    public Iterator<Pixel2D> iterator() {
+        return new Iterator<Pixel2D>() {
+            private int _i;
+
+            @Override
+            public boolean hasNext() {
+                return cell(_i) >= 0;
+            }
+
+            @Override
+            public Pixel2D next() {
+                int c = cell(_i);
+                if (c < 0) throw new NoSuchElementException();
+                _i++;
+                return _map.pixel(c);
+            }
+        };
+    }
+
+    private void checkCurrent() {
+        if (_bfs.epoch() != _epoch || _bfs.isStale(_map)) {
+            throw new IllegalStateException("a later lazyDistance() or init() of the map took over this search");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyDistanceTest {
+
+    private static final int OBS = 1;
+
+    // allDistance() keeps obstacles as their color, so they are told apart by the map
+    @Test
+    void randomQueries_matchAllDistance() {
+        Random r = new Random(23);
+        for (int round = 0; round < 40; round++) {
+            int w = 1 + r.nextInt(20), h = 1 + r.nextInt(15);
+            Map m = RandomMaps.randomMap(r, w, h, 0.3, round % 2 == 0);
+            Pixel2D s = new Index2D(r.nextInt(w), r.nextInt(h));
+            m.setPixel(s, 0);
+            Map2D d = m.allDistance(s, OBS);
+            LazyDistance lazy = m.lazyDistance(s, OBS);
+
+            for (int q = 0; q < 30; q++) {
+                int x = r.nextInt(w), y = r.nextInt(h);
+                int expected = (m.getPixel(x, y) == OBS) ? -1 : d.getPixel(x, y);
+                int limit = r.nextInt(w + h);
+                assertEquals(expected <= limit ? expected : -1, lazy.distanceTo(m.cellOf(x, y), limit));
+                assertEquals(expected, lazy.distanceTo(new Index2D(x, y)));
+            }
+            assertEquals(-1, lazy.distanceTo(new Index2D(w, 0)));
+        }
+    }
+
+    @Test
+    void iteration_isBfsOrder_andStopsEarly() {
+        Random r = new Random(230);
+        for (int round = 0; round < 20; round++) {
+            int w = 5 + r.nextInt(20), h = 5 + r.nextInt(15);
+            Map m = RandomMaps.randomMap(r, w, h, 0.3, round % 2 == 1);
+            Pixel2D s = new Index2D(r.nextInt(w), r.nextInt(h));
+            m.setPixel(s, 0);
+            Map2D d = m.allDistance(s, OBS);
+
+            LazyDistance lazy = m.lazyDistance(s, OBS);
+            Set<Pixel2D> seen = new HashSet<>();
+            int last = 0;
+            for (Pixel2D p : lazy) {
+                int dist = d.getPixel(p);
+                assertTrue(dist >= last);
+                last = dist;
+                assertTrue(seen.add(p));
+            }
+            int reachable = 0;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    if (m.getPixel(x, y) != OBS && d.getPixel(x, y) >= 0) reachable++;
+                }
+            }
+            assertEquals(reachable, seen.size());
+            assertEquals(-1, lazy.cell(reachable));
+
+            // stopping after the source and its neighbours leaves the rest unexplored
+            LazyDistance fresh = m.lazyDistance(s, OBS);
+            assertEquals(s, fresh.iterator().next());
+            assertTrue(fresh.discovered() <= 5);
+        }
+    }
+
+    @Test
+    void obstacleStart_givesNull() {
+        Map m = new Map(3, 3, 0);
+        m.setPixel(1, 1, OBS);
+        assertNull(m.lazyDistance(new Index2D(1, 1), OBS));
+        assertNull(m.lazyDistance(new Index2D(3, 1), OBS));
+        assertEquals(-1, m.lazyDistance(new Index2D(0, 0), OBS).distanceTo(new Index2D(1, 1)));
+    }
+
+    @Test
+    void aLaterLazyDistance_takesOverTheWorkspace() {
+        Map m = new Map(30, 30, 0);
+        LazyDistance a = m.lazyDistance(new Index2D(0, 0), OBS);
+        assertEquals(2, a.distanceTo(new Index2D(1, 1)));
+        LazyDistance b = m.lazyDistance(new Index2D(5, 5), OBS);
+        // other searches of the map do not disturb it
+        m.shortestPath(new Index2D(0, 0), new Index2D(29, 29), OBS);
+        assertEquals(0, b.distanceTo(new Index2D(5, 5)));
+        assertTrue(b.discovered() <= 5);
+        assertThrows(IllegalStateException.class, () -> a.distanceTo(new Index2D(2, 2)));
+    }
+}
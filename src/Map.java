@@ -1,4 +1,3 @@
-import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
@@ -6,11 +5,28 @@ import java.util.Arrays;
  * @author boaz.benmoshe
  */
 public class Map implements Map2D {
-    private int[][] _map;
+    // cells are kept in one flat array: (x,y) lives at x*_h+y
+    private int[] _map;
+    private int _w, _h;
     private boolean _cyclicFlag = true;
+    // reusable search workspace, created lazily (see bfs())
+    private MapBfs _bfs;
+    // the workspace of the latest lazyDistance(), kept apart from bfs() (see lazyBfs())
+    private MapBfs _lazyBfs;
+    // change listeners, e.g. component indexes (null while there is none)
+    private MapListener[] _listeners;
+    // interned pixels of this board size, fetched lazily (see pixel())
+    private PixelTable _pixels;
+    // modification counter (see version())
+    private long _version;
+    // cached distance fields, null while disabled (see enableDistanceCache())
+    private DistanceCache _distances;
 
     // 4-neighbors directions: Up, Left, Down, Right
-    private static final int[][] DIRS = {{0,-1},{-1,0},{0,1},{1,0}};
+    static final int[][] DIRS = {{0,-1},{-1,0},{0,1},{1,0}};
+
+    /** The largest cell cost of the weighted queries (their bucket queue has one bucket per cost). */
+    public static final int MAX_STEP_COST = 1 << 16;
 
     /**
      * Constructs a w*h 2D raster map with an init value v.
@@ -29,60 +45,77 @@ public class Map implements Map2D {
         init(data);
     }
 
+    /**
+     * Wraps an already built flat array (no copy) - used for computed result maps.
+     */
+    private Map(int w, int h, int[] cells) {
+        _w = w;
+        _h = h;
+        _map = cells;
+    }
+
     @Override
     public void init(int w, int h, int v) {
         if (w <= 0 || h <= 0) {
-            _map = new int[0][0];
+            _w = _h = 0;
+            _map = new int[0];
+            changed();
             return;
         }
-        _map = new int[w][h];
-        for (int x = 0; x < w; x++) {
-            Arrays.fill(_map[x], v);
-        }
+        _w = w;
+        _h = h;
+        _map = new int[w * h];
+        Arrays.fill(_map, v);
+        changed();
     }
 
     @Override
     public void init(int[][] arr) {
         if (arr == null || arr.length == 0 || arr[0] == null || arr[0].length == 0) {
-            _map = new int[0][0];
+            _w = _h = 0;
+            _map = new int[0];
+            changed();
             return;
         }
         int w = arr.length;
         int h = arr[0].length;
-        _map = new int[w][h];
+        int[] cells = new int[w * h];
         for (int x = 0; x < w; x++) {
             if (arr[x] == null || arr[x].length != h) {
                 throw new IllegalArgumentException("init(int[][]): jagged or null row at x=" + x);
             }
-            System.arraycopy(arr[x], 0, _map[x], 0, h);
+            System.arraycopy(arr[x], 0, cells, x * h, h);
         }
+        _w = w;
+        _h = h;
+        _map = cells;
+        changed();
     }
 
     @Override
     public int[][] getMap() {
-        if (_map == null || _map.length == 0) return new int[0][0];
-        int w = _map.length;
-        int h = _map[0].length;
-        int[][] ans = new int[w][h];
-        for (int x = 0; x < w; x++) {
-            System.arraycopy(_map[x], 0, ans[x], 0, h);
+        if (_w == 0 || _h == 0) return new int[0][0];
+        int[][] ans = new int[_w][_h];
+        for (int x = 0; x < _w; x++) {
+            System.arraycopy(_map, x * _h, ans[x], 0, _h);
         }
         return ans;
     }
 
     @Override
     public int getWidth() {
-        return (_map == null) ? 0 : _map.length;
+        return _w;
     }
 
     @Override
     public int getHeight() {
-        return (_map == null || _map.length == 0) ? 0 : _map[0].length;
+        return _h;
     }
 
     @Override
     public int getPixel(int x, int y) {
-        return _map[x][y];
+        checkInside(x, y);
+        return _map[x * _h + y];
     }
 
     @Override
@@ -92,7 +125,15 @@ public class Map implements Map2D {
 
     @Override
     public void setPixel(int x, int y, int v) {
-        _map[x][y] = v;
+        checkInside(x, y);
+        int id = x * _h + y;
+        int old = _map[id];
+        if (old == v) return;
+        _map[id] = v;
+        _version++;
+        if (_listeners != null) {
+            for (MapListener l : _listeners) l.cellChanged(id, old, v);
+        }
     }
 
     @Override
@@ -103,6 +144,7 @@ public class Map implements Map2D {
     @Override
     /**
      * Fills this map with the new color (new_v) starting from p.
+     * Scanline fill over vertical runs, see MapBfs.fillSpans().
      * https://en.wikipedia.org/wiki/Flood_fill
      */
     public int fill(Pixel2D xy, int new_v) {
@@ -114,42 +156,8 @@ public class Map implements Map2D {
         int old = getPixel(sx, sy);
         if (old == new_v) return 0;
 
-        int w = getWidth(), h = getHeight();
-        boolean[][] vis = new boolean[w][h];
-        ArrayDeque<Index2D> q = new ArrayDeque<>();
-        q.add(new Index2D(sx, sy));
-        vis[sx][sy] = true;
-
-        int count = 0;
-
-        while (!q.isEmpty()) {
-            Index2D p = q.poll();
-            int x = p.getX();
-            int y = p.getY();
-
-            if (_map[x][y] != old) continue;
-
-            _map[x][y] = new_v;
-            count++;
-
-            for (int[] d : DIRS) {
-                int nx = x + d[0];
-                int ny = y + d[1];
-
-                if (_cyclicFlag) {
-                    nx = mod(nx, w);
-                    ny = mod(ny, h);
-                }
-
-                if (!isInside(nx, ny)) continue;
-                if (vis[nx][ny]) continue;
-                if (_map[nx][ny] != old) continue;
-
-                vis[nx][ny] = true;
-                q.add(new Index2D(nx, ny));
-            }
-        }
-
+        int count = bfs().fillSpans(sx * _h + sy, old, new_v);
+        changed();
         return count;
     }
 
@@ -160,74 +168,196 @@ public class Map implements Map2D {
      * Returns an array of pixels from p1 to p2 (inclusive), or null if no path.
      */
     public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor) {
+        PathBuffer path = new PathBuffer();
+        return shortestPath(p1, p2, obsColor, path) ? path.toPixels() : null;
+    }
+
+    /**
+     * Same BFS as shortestPath(p1, p2, obsColor), writing the path into out as packed
+     * cells instead of allocating pixels - out can be reused from query to query.
+     * @return true iff there is a path (otherwise out is left empty).
+     */
+    public boolean shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, PathBuffer out) {
+        out.clear();
+        if (p1 == null || p2 == null) return false;
+        if (!isInside(p1) || !isInside(p2)) return false;
+
+        int h = _h;
+        int s = p1.getX() * h + p1.getY();
+        int t = p2.getX() * h + p2.getY();
+
+        if (_map[s] == obsColor || _map[t] == obsColor) return false;
+        if (!mayConnect(s, t, obsColor)) return false;
+        if (s == t) {
+            out.prepare(pixels(), 1)[0] = s;
+            return true;
+        }
+
+        ContractionHierarchy ch = hierarchy(obsColor);
+        if (ch != null) return ch.path(s, t, out);
+
+        MapBfs bfs = bfs();
+        if (!bfs.run(s, obsColor, false, t)) return false;
+        bfs.path(t, out);
+        return true;
+    }
+
+    /**
+     * Same contract as shortestPath(), computed with a bidirectional BFS which grows
+     * from both p1 and p2 and meets in the middle (including across cyclic edges).
+     * On open areas this visits far fewer cells than the one-sided search.
+     */
+    public Pixel2D[] shortestPathBidirectional(Pixel2D p1, Pixel2D p2, int obsColor) {
         if (p1 == null || p2 == null) return null;
         if (!isInside(p1) || !isInside(p2)) return null;
 
-        int w = getWidth(), h = getHeight();
-        int sx = p1.getX(), sy = p1.getY();
-        int tx = p2.getX(), ty = p2.getY();
+        int s = p1.getX() * _h + p1.getY();
+        int t = p2.getX() * _h + p2.getY();
 
-        if (_map[sx][sy] == obsColor || _map[tx][ty] == obsColor) return null;
-        if (sx == tx && sy == ty) return new Pixel2D[]{ new Index2D(sx, sy) };
+        if (_map[s] == obsColor || _map[t] == obsColor) return null;
+        if (!mayConnect(s, t, obsColor)) return null;
+        if (s == t) return new Pixel2D[]{ pixel(s) };
 
-        boolean[][] vis = new boolean[w][h];
-        Index2D[][] prev = new Index2D[w][h];
+        MapBfs bfs = bfs();
+        if (!bfs.runBidirectional(s, t, obsColor)) return null;
+        return bfs.pathBidirectional();
+    }
 
-        ArrayDeque<Index2D> q = new ArrayDeque<>();
-        q.add(new Index2D(sx, sy));
-        vis[sx][sy] = true;
+    /**
+     * Same contract as shortestPath(), computed with an A* search guided by the
+     * (cyclic aware) Manhattan distance to p2, so mostly the cells "towards" p2 are visited.
+     */
+    public Pixel2D[] shortestPathAStar(Pixel2D p1, Pixel2D p2, int obsColor) {
+        PathBuffer path = new PathBuffer();
+        return shortestPathAStar(p1, p2, obsColor, path) ? path.toPixels() : null;
+    }
 
-        while (!q.isEmpty()) {
-            Index2D cur = q.poll();
-            int x = cur.getX();
-            int y = cur.getY();
+    /**
+     * shortestPathAStar() writing into a reusable PathBuffer, see shortestPath(p1, p2, obsColor, out).
+     */
+    public boolean shortestPathAStar(Pixel2D p1, Pixel2D p2, int obsColor, PathBuffer out) {
+        out.clear();
+        if (p1 == null || p2 == null) return false;
+        if (!isInside(p1) || !isInside(p2)) return false;
 
-            for (int[] d : DIRS) {
-                int nx = x + d[0];
-                int ny = y + d[1];
+        int s = p1.getX() * _h + p1.getY();
+        int t = p2.getX() * _h + p2.getY();
 
-                if (_cyclicFlag) {
-                    nx = mod(nx, w);
-                    ny = mod(ny, h);
-                }
+        if (_map[s] == obsColor || _map[t] == obsColor) return false;
+        if (!mayConnect(s, t, obsColor)) return false;
 
-                if (!isInside(nx, ny)) continue;
-                if (vis[nx][ny]) continue;
-                if (_map[nx][ny] == obsColor) continue;
+        MapBfs bfs = bfs();
+        if (!bfs.runAStar(s, t, obsColor)) return false;
+        bfs.path(t, out);
+        return true;
+    }
 
-                vis[nx][ny] = true;
-                prev[nx][ny] = new Index2D(x, y);
+    /**
+     * Weighted shortest path from p1 to p2 avoiding obsColor, where stepping into a cell v
+     * costs 1 + max(0, cost[v]) - e.g. cost is a danger map, so the path trades length for
+     * safety. Dijkstra with a Dial bucket queue (see MapBfs.runWeighted()), cyclic aware,
+     * with no allocation per visited cell.
+     * The search keeps one bucket per possible step cost, so small costs keep it fast.
+     * @param cost a map of this size with small costs (at most MAX_STEP_COST).
+     * @return the total cost of the path written to out, or -1 if there is none (out is then empty).
+     * @throws IllegalArgumentException if cost has other dimensions or a too large value.
+     */
+    public int shortestPathWeighted(Pixel2D p1, Pixel2D p2, int obsColor, Map2D cost, PathBuffer out) {
+        return shortestPathWeighted(p1, p2, obsColor, cost, maxCost(flat(cost)), out);
+    }
 
-                if (nx == tx && ny == ty) {
-                    return buildPath(prev, sx, sy, tx, ty);
-                }
+    /**
+     * Same as shortestPathWeighted(p1, p2, obsColor, cost, out) for a caller which knows
+     * the largest cost of the field: the field is not scanned for it, and costs above
+     * maxCost count as maxCost.
+     * @throws IllegalArgumentException if cost has other dimensions, or maxCost is negative
+     * or above MAX_STEP_COST.
+     */
+    public int shortestPathWeighted(Pixel2D p1, Pixel2D p2, int obsColor, Map2D cost, int maxCost, PathBuffer out) {
+        out.clear();
+        int[] c = flat(cost);
+        checkMaxCost(maxCost);
+        if (!isInside(p1) || !isInside(p2)) return -1;
+        int s = p1.getX() * _h + p1.getY();
+        int t = p2.getX() * _h + p2.getY();
+        if (_map[s] == obsColor || _map[t] == obsColor) return -1;
+        if (!mayConnect(s, t, obsColor)) return -1;
+        return runWeighted(s, t, 0, obsColor, c, maxCost, out);
+    }
 
-                q.add(new Index2D(nx, ny));
-            }
-        }
+    /**
+     * shortestPathWeighted() returning the path as pixels, or null if there is none.
+     */
+    public Pixel2D[] shortestPathWeighted(Pixel2D p1, Pixel2D p2, int obsColor, Map2D cost) {
+        PathBuffer path = new PathBuffer();
+        return (shortestPathWeighted(p1, p2, obsColor, cost, path) < 0) ? null : path.toPixels();
+    }
 
-        return null;
+    /**
+     * The cheapest path (costs as in shortestPathWeighted()) from start to any cell holding
+     * color, start itself excluded - e.g. the nearest dot that keeps away from the ghosts.
+     * @return the total cost of the path written to out, or -1 if no such cell is reachable.
+     */
+    public int nearestWeighted(Pixel2D start, int color, int obsColor, Map2D cost, PathBuffer out) {
+        return nearestWeighted(start, color, obsColor, cost, maxCost(flat(cost)), out);
     }
 
-    private Pixel2D[] buildPath(Index2D[][] prev, int sx, int sy, int tx, int ty) {
-        ArrayDeque<Pixel2D> stack = new ArrayDeque<>();
-        int cx = tx, cy = ty;
-        stack.push(new Index2D(cx, cy));
+    /**
+     * nearestWeighted() with a known largest cost (see shortestPathWeighted(p1, p2, obsColor,
+     * cost, maxCost, out)).
+     */
+    public int nearestWeighted(Pixel2D start, int color, int obsColor, Map2D cost, int maxCost, PathBuffer out) {
+        out.clear();
+        int[] c = flat(cost);
+        checkMaxCost(maxCost);
+        if (!isInside(start)) return -1;
+        int s = start.getX() * _h + start.getY();
+        if (_map[s] == obsColor) return -1;
+        return runWeighted(s, -1, color, obsColor, c, maxCost, out);
+    }
 
-        while (!(cx == sx && cy == sy)) {
-            Index2D p = prev[cx][cy];
-            if (p == null) return null;
-            cx = p.getX();
-            cy = p.getY();
-            stack.push(new Index2D(cx, cy));
+    private static int maxCost(int[] cost) {
+        int maxCost = 0;
+        for (int v : cost) maxCost = Math.max(maxCost, v);
+        if (maxCost > MAX_STEP_COST) {
+            throw new IllegalArgumentException("cell cost " + maxCost + " is above " + MAX_STEP_COST);
         }
+        return maxCost;
+    }
 
-        Pixel2D[] path = new Pixel2D[stack.size()];
-        int i = 0;
-        while (!stack.isEmpty()) {
-            path[i++] = stack.pop();
+    private static void checkMaxCost(int maxCost) {
+        if (maxCost < 0 || maxCost > MAX_STEP_COST) {
+            throw new IllegalArgumentException("max cost " + maxCost + " is not in [0, " + MAX_STEP_COST + "]");
         }
-        return path;
+    }
+
+    private int runWeighted(int s, int target, int targetColor, int obsColor, int[] cost, int maxCost, PathBuffer out) {
+        MapBfs bfs = bfs();
+        int found = bfs.runWeighted(s, target, targetColor, obsColor, cost, maxCost);
+        if (found < 0) return -1;
+        bfs.pathByParents(found, out);
+        return bfs.distance(found);
+    }
+
+    /**
+     * Same contract as shortestPath(), computed with Jump Point Search: on large open
+     * areas only the few "turning" cells are expanded, and the straight runs between
+     * them are filled back in to give the usual step-by-step path.
+     * The horizontal jumps of each probed row are kept between calls until the map changes.
+     */
+    public Pixel2D[] shortestPathJps(Pixel2D p1, Pixel2D p2, int obsColor) {
+        if (p1 == null || p2 == null) return null;
+        if (!isInside(p1) || !isInside(p2)) return null;
+
+        int s = p1.getX() * _h + p1.getY();
+        int t = p2.getX() * _h + p2.getY();
+
+        if (_map[s] == obsColor || _map[t] == obsColor) return null;
+        if (!mayConnect(s, t, obsColor)) return null;
+
+        MapBfs bfs = bfs();
+        if (!bfs.runJps(s, t, obsColor)) return null;
+        return bfs.pathJps(s, t);
     }
 
     @Override
@@ -240,7 +370,7 @@ public class Map implements Map2D {
      * Helper method (NOT part of Map2D in some versions) - therefore no @Override.
      */
     public boolean isInside(int x, int y) {
-        return x >= 0 && y >= 0 && x < getWidth() && y < getHeight();
+        return x >= 0 && y >= 0 && x < _w && y < _h;
     }
 
     @Override
@@ -250,7 +380,9 @@ public class Map implements Map2D {
 
     @Override
     public void setCyclic(boolean cy) {
+        if (_cyclicFlag == cy) return;
         _cyclicFlag = cy;
+        changed();
     }
 
     @Override
@@ -263,52 +395,575 @@ public class Map implements Map2D {
     public Map2D allDistance(Pixel2D start, int obsColor) {
         if (start == null || !isInside(start)) return null;
 
-        int w = getWidth(), h = getHeight();
-        int[][] dist = new int[w][h];
-        for (int x = 0; x < w; x++) Arrays.fill(dist[x], -1);
+        int s = start.getX() * _h + start.getY();
+        int[] key = {s};
+        if (_distances != null) {
+            DistanceCache.Field f = _distances.get(key, obsColor, _version, false);
+            if (f != null) return new Map(_w, _h, f.dist.clone());
+        }
+
+        int[] dist = new int[_map.length];
 
         // keep obstacles as obsColor in the output
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                if (_map[x][y] == obsColor) dist[x][y] = obsColor;
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = (_map[i] == obsColor) ? obsColor : -1;
+        }
+
+        if (_map[s] != obsColor) {
+            MapBfs bfs = bfs();
+            bfs.run(s, obsColor, false, -1);
+            int count = bfs.visitedCount();
+            for (int i = 0; i < count; i++) {
+                int id = bfs.visited(i);
+                dist[id] = bfs.distance(id);
+            }
+        }
+
+        if (_distances != null) _distances.put(key, obsColor, _version, dist.clone(), null);
+        return new Map(_w, _h, dist);
+    }
+
+    /**
+     * Multi-source version of allDistance(Pixel2D, int): a single BFS pass that
+     * gives each cell its distance to the closest of the sources.
+     * Same output conventions (obstacles keep obsColor, unreachable cells are -1).
+     * Sources which are null, outside the map or on an obstacle are ignored.
+     */
+    public Map2D allDistance(Pixel2D[] sources, int obsColor) {
+        if (sources == null) return null;
+        return multiSource(sources, obsColor, false).getDistances();
+    }
+
+    /**
+     * Same BFS as allDistance(Pixel2D[], int), which also tells for each cell the index
+     * (in sources) of the source which reached it first. Both are new maps.
+     */
+    public SourceDistances allDistanceLabeled(Pixel2D[] sources, int obsColor) {
+        if (sources == null) return null;
+        return multiSource(sources, obsColor, true);
+    }
+
+    private SourceDistances multiSource(Pixel2D[] sources, int obsColor, boolean withLabels) {
+        // the cell of every source, -1 for the ignored ones
+        int[] key = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            key[i] = -1;
+            if (!isInside(sources[i])) continue;
+            int s = sources[i].getX() * _h + sources[i].getY();
+            if (_map[s] != obsColor) key[i] = s;
+        }
+
+        int[] dist, labels;
+        DistanceCache.Field f = (_distances == null) ? null : _distances.get(key, obsColor, _version, withLabels);
+        if (f != null) {
+            dist = f.dist.clone();
+            labels = withLabels ? f.labels.clone() : null;
+        } else {
+            // with a cache the labels are kept too, for a later query which needs them
+            dist = new int[_map.length];
+            labels = (!withLabels && _distances == null) ? null : new int[_map.length];
+            multiSourceDistance(key, obsColor, dist, labels);
+            if (_distances != null) _distances.put(key, obsColor, _version, dist.clone(), labels.clone());
+        }
+        return new SourceDistances(new Map(_w, _h, dist), withLabels ? new Map(_w, _h, labels) : null);
+    }
+
+    // fills dist (and labels, if not null) from the source cells of key
+    private void multiSourceDistance(int[] key, int obsColor, int[] dist, int[] labels) {
+        for (int i = 0; i < dist.length; i++) {
+            dist[i] = (_map[i] == obsColor) ? obsColor : -1;
+        }
+        if (labels != null) Arrays.fill(labels, -1);
+
+        // valid source cells, and for each the index it had in sources
+        int[] src = new int[key.length];
+        int[] from = new int[key.length];
+        int count = 0;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] < 0) continue;
+            src[count] = key[i];
+            from[count] = i;
+            count++;
+        }
+        if (count == 0) return;
+
+        MapBfs bfs = bfs();
+        bfs.run(src, count, obsColor, false);
+        int n = bfs.visitedCount();
+        for (int i = 0; i < n; i++) {
+            int id = bfs.visited(i);
+            dist[id] = bfs.distance(id);
+            if (labels != null) labels[id] = from[bfs.origin(id)];
+        }
+    }
+
+    /**
+     * The k = out.length cells holding color which are nearest to start (avoiding obsColor),
+     * found by one BFS that stops at the k'th hit. out[i] gets the shortest path from start
+     * to the i'th nearest one (so its distance is out[i].length()-1); start itself is never
+     * a hit. Slots beyond the number of hits are left empty.
+     * @return the number of cells found (at most out.length).
+     */
+    public int nearest(Pixel2D start, int color, int obsColor, PathBuffer[] out) {
+        for (PathBuffer b : out) b.clear();
+        if (out.length == 0 || !isInside(start)) return 0;
+        int s = start.getX() * _h + start.getY();
+        if (_map[s] == obsColor) return 0;
+
+        int[] hits = new int[out.length];
+        MapBfs bfs = bfs();
+        int found = bfs.runNearest(s, color, obsColor, out.length, hits);
+        for (int i = 0; i < found; i++) bfs.path(hits[i], out[i]);
+        return found;
+    }
+
+    /**
+     * k = 1 version of nearest(start, color, obsColor, PathBuffer[]).
+     * @return true iff a cell holding color is reachable (then out holds the path to the nearest).
+     */
+    public boolean nearest(Pixel2D start, int color, int obsColor, PathBuffer out) {
+        return nearest(start, color, obsColor, new PathBuffer[]{out}) == 1;
+    }
+
+    /**
+     * Bounded version of allDistance(Pixel2D, int): the BFS stops at depth radius,
+     * so the cost depends on the radius and not on the size of the map.
+     * @return the cells within radius steps of start (in BFS order) with their distances,
+     * or null if start is not a valid non-obstacle cell.
+     */
+    public BoundedDistance distancesWithin(Pixel2D start, int obsColor, int radius) {
+        if (start == null || !isInside(start) || radius < 0) return null;
+        int s = start.getX() * _h + start.getY();
+        if (_map[s] == obsColor) return null;
+
+        MapBfs bfs = bfs();
+        bfs.runWithin(s, obsColor, radius);
+        int n = bfs.visitedCount();
+        int[] cells = new int[n];
+        int[] dist = new int[n];
+        for (int i = 0; i < n; i++) {
+            cells[i] = bfs.visited(i);
+            dist[i] = bfs.distance(cells[i]);
+        }
+        return new BoundedDistance(_w, _h, radius, cells, dist);
+    }
+
+    /**
+     * Lazy version of allDistance(Pixel2D, int): the BFS is run only as far as the queries
+     * on the result need, and keeps its frontier from one query to the next - e.g. the
+     * distances from Pac-Man to a few ghosts, which are usually close.
+     * The result runs on a reusable epoch-stamped workspace of this map, so taking one costs
+     * O(1) and not O(w*h) - and it stays usable only until the next lazyDistance() call of
+     * this map (on the same thread).
+     * @return the lazy distances from start, or null if start is not a valid non-obstacle cell.
+     */
+    public LazyDistance lazyDistance(Pixel2D start, int obsColor) {
+        if (start == null || !isInside(start)) return null;
+        int s = start.getX() * _h + start.getY();
+        if (_map[s] == obsColor) return null;
+        return new LazyDistance(this, lazyBfs(), s, obsColor);
+    }
+
+    /**
+     * @return the modification counter of this map: it grows on every change of a cell
+     * value, of the size or of the cyclic flag, and stays put otherwise - so two equal
+     * versions of the same map mean equal contents.
+     */
+    public long version() {
+        return _version;
+    }
+
+    /**
+     * Starts caching the fields of allDistance() (single and multi source): a field asked
+     * again for the same sources, obstacle color and version() is copied from the cache
+     * instead of computed. Replaces a previous cache.
+     * @param capacity the number of fields kept (least recently used ones are evicted).
+     * @return the new cache, e.g. for its hit/miss counters.
+     */
+    public DistanceCache enableDistanceCache(int capacity) {
+        _distances = new DistanceCache(capacity);
+        return _distances;
+    }
+
+    /**
+     * Stops caching distance fields and drops the cached ones.
+     */
+    public void disableDistanceCache() {
+        _distances = null;
+    }
+
+    /**
+     * @return the distance cache, or null if it is disabled.
+     */
+    public DistanceCache distanceCache() {
+        return _distances;
+    }
+
+    /**
+     * @return true iff a and b are non-obstacle cells joined by a path avoiding obsColor.
+     * The first call for an obstacle color builds a component index (O(w*h)), which then
+     * follows setPixel() incrementally and answers in (almost) O(1). While it exists,
+     * shortestPath() and its variants also use it to reject unreachable targets at once.
+     */
+    public boolean isConnected(Pixel2D a, Pixel2D b, int obsColor) {
+        if (!isInside(a) || !isInside(b)) return false;
+        ComponentIndex idx = components(obsColor);
+        if (idx == null) {
+            idx = new ComponentIndex(this, obsColor);
+            addListener(idx);
+        }
+        return idx.connected(a.getX() * _h + a.getY(), b.getX() * _h + b.getY());
+    }
+
+    /**
+     * The index of the cells holding color (counts, iteration, nearest candidates), which
+     * follows every later change of this map. It is built (O(w*h)) on the first call for a
+     * color; later calls return the same index until dropColorIndex(color).
+     */
+    public ColorIndex colorIndex(int color) {
+        if (_listeners != null) {
+            for (MapListener l : _listeners) {
+                if (l instanceof ColorIndex && ((ColorIndex) l).getColor() == color) return (ColorIndex) l;
             }
         }
+        ColorIndex idx = new ColorIndex(this, color);
+        addListener(idx);
+        return idx;
+    }
+
+    /**
+     * Stops maintaining the index of color (if there is one), so changes cost nothing again.
+     */
+    public void dropColorIndex(int color) {
+        if (_listeners == null) return;
+        for (MapListener l : _listeners) {
+            if (l instanceof ColorIndex && ((ColorIndex) l).getColor() == color) {
+                removeListener(l);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds a contraction hierarchy of the cells avoiding obsColor (see ContractionHierarchy)
+     * and from then on answers shortestPath(p1, p2, obsColor) and shortestPath(p1, p2,
+     * obsColor, out) with it: a small bidirectional search instead of a BFS over the board.
+     * Worth it for many queries on a big board whose walls rarely change - a change of an
+     * obstacle cell rebuilds the whole hierarchy on the next query. Later calls return the
+     * same hierarchy until dropContractionHierarchy(obsColor).
+     */
+    public ContractionHierarchy useContractionHierarchy(int obsColor) {
+        ContractionHierarchy ch = hierarchy(obsColor);
+        if (ch == null) {
+            ch = new ContractionHierarchy(this, obsColor);
+            addListener(ch);
+        }
+        return ch;
+    }
+
+    /**
+     * Drops the contraction hierarchy of obsColor (if there is one): shortestPath() runs BFS again.
+     */
+    public void dropContractionHierarchy(int obsColor) {
+        ContractionHierarchy ch = hierarchy(obsColor);
+        if (ch != null) removeListener(ch);
+    }
+
+    ///////////////// Packed cells //////////////////
+    // A cell can be handled as one int, its id x*h+y (the index into the flat array),
+    // which saves the Pixel2D objects on hot paths. Ids are only valid for this board size.
+
+    /**
+     * @return the packed id of (x,y).
+     * @throws ArrayIndexOutOfBoundsException if (x,y) is outside the map.
+     */
+    public int cellOf(int x, int y) {
+        checkInside(x, y);
+        return x * _h + y;
+    }
+
+    /**
+     * @return the packed id of p.
+     */
+    public int cellOf(Pixel2D p) {
+        return cellOf(p.getX(), p.getY());
+    }
+
+    /**
+     * @return the x coordinate of a packed cell.
+     */
+    public int cellX(int cell) {
+        return cell / _h;
+    }
+
+    /**
+     * @return the y coordinate of a packed cell.
+     */
+    public int cellY(int cell) {
+        return cell % _h;
+    }
+
+    /**
+     * @return the value of a packed cell.
+     */
+    public int getCell(int cell) {
+        return _map[cell];
+    }
+
+    /**
+     * One step from a packed cell in direction d (an index into DIRS: 0 y-1, 1 x-1, 2 y+1, 3 x+1),
+     * wrapping around the edges when the map is cyclic.
+     * @return the neighbour's id, or -1 if the step leaves a non-cyclic map.
+     */
+    public int step(int cell, int d) {
+        int x = cell / _h;
+        return neighbour(cell, x, cell - x * _h, d);
+    }
+
+    /**
+     * Writes the ids of the (up to 4) neighbours of cell into out, in DIRS order.
+     * @return how many were written.
+     */
+    public int neighbours(int cell, int[] out) {
+        int x = cell / _h, y = cell - x * _h, k = 0;
+        for (int d = 0; d < DIRS.length; d++) {
+            int n = neighbour(cell, x, y, d);
+            if (n >= 0) out[k++] = n;
+        }
+        return k;
+    }
 
-        int sx = start.getX(), sy = start.getY();
-        if (_map[sx][sy] == obsColor) return new Map(dist);
+    /**
+     * @return the pixel of a packed cell - a shared immutable instance, not a new object.
+     */
+    public Pixel2D pixel(int cell) {
+        return pixels().get(cell);
+    }
 
-        ArrayDeque<Index2D> q = new ArrayDeque<>();
-        q.add(new Index2D(sx, sy));
-        dist[sx][sy] = 0;
+    /**
+     * @return the interned pixels of this map, created on first use (and again after a resize).
+     */
+    PixelTable pixels() {
+        PixelTable t = _pixels;
+        if (t == null || !t.fits(_w, _h)) {
+            t = new PixelTable(_w, _h);
+            _pixels = t;
+        }
+        return t;
+    }
 
-        while (!q.isEmpty()) {
-            Index2D cur = q.poll();
-            int x = cur.getX(), y = cur.getY();
-            int cd = dist[x][y];
+    ///////////////// Distance field algebra //////////////////
+    // Element-wise operations on whole maps (e.g. distance maps), done on the flat arrays.
+    // The loops are kept branch free so the JIT can vectorize them.
 
-            for (int[] d : DIRS) {
-                int nx = x + d[0];
-                int ny = y + d[1];
+    /**
+     * this[x][y] = min(this[x][y], other[x][y]) for every cell.
+     * @throws IllegalArgumentException if other does not have the dimensions of this map.
+     */
+    public void min(Map2D other) {
+        int[] a = _map, b = flat(other);
+        for (int i = 0; i < a.length; i++) a[i] = Math.min(a[i], b[i]);
+        changed();
+    }
 
-                if (_cyclicFlag) {
-                    nx = mod(nx, w);
-                    ny = mod(ny, h);
-                }
+    /**
+     * this[x][y] = max(this[x][y], other[x][y]) for every cell.
+     * @throws IllegalArgumentException if other does not have the dimensions of this map.
+     */
+    public void max(Map2D other) {
+        int[] a = _map, b = flat(other);
+        for (int i = 0; i < a.length; i++) a[i] = Math.max(a[i], b[i]);
+        changed();
+    }
 
-                if (!isInside(nx, ny)) continue;
-                if (_map[nx][ny] == obsColor) continue;
-                if (dist[nx][ny] != -1) continue;
+    /**
+     * this[x][y] += other[x][y] for every cell.
+     * @throws IllegalArgumentException if other does not have the dimensions of this map.
+     */
+    public void add(Map2D other) {
+        int[] a = _map, b = flat(other);
+        for (int i = 0; i < a.length; i++) a[i] += b[i];
+        changed();
+    }
 
-                dist[nx][ny] = cd + 1;
-                q.add(new Index2D(nx, ny));
+    /**
+     * this[x][y] *= other[x][y] for every cell (e.g. applying a 0/1 mask).
+     * @throws IllegalArgumentException if other does not have the dimensions of this map.
+     */
+    public void mul(Map2D other) {
+        int[] a = _map, b = flat(other);
+        for (int i = 0; i < a.length; i++) a[i] *= b[i];
+        changed();
+    }
+
+    /**
+     * Clamps every cell into [lo, hi].
+     */
+    public void clamp(int lo, int hi) {
+        int[] a = _map;
+        for (int i = 0; i < a.length; i++) a[i] = Math.max(lo, Math.min(hi, a[i]));
+        changed();
+    }
+
+    /**
+     * @return a new 0/1 map with 1 where the value of this map is at least t.
+     */
+    public Map threshold(int t) {
+        int[] a = _map, ans = new int[a.length];
+        for (int i = 0; i < a.length; i++) ans[i] = (a[i] >= t) ? 1 : 0;
+        return new Map(_w, _h, ans);
+    }
+
+    /**
+     * @return a new 0/1 map with 0 where this map holds v and 1 elsewhere
+     * (e.g. notEqualMask(obsColor) is 1 exactly on the walkable cells).
+     */
+    public Map notEqualMask(int v) {
+        int[] a = _map, ans = new int[a.length];
+        for (int i = 0; i < a.length; i++) ans[i] = (a[i] != v) ? 1 : 0;
+        return new Map(_w, _h, ans);
+    }
+
+    /**
+     * @return the neighbour of p (4-neighbors, following the cyclic flag) with the largest
+     * value, or p itself if no neighbour has a value at least as large as p's.
+     * On ties the neighbour found last (DIRS order) wins.
+     */
+    public Pixel2D argmaxNeighbor(Pixel2D p) {
+        int x = p.getX(), y = p.getY();
+        checkInside(x, y);
+        int id = x * _h + y, best = id;
+        for (int d = 0; d < DIRS.length; d++) {
+            int n = neighbour(id, x, y, d);
+            if (n >= 0 && _map[n] >= _map[best]) best = n;
+        }
+        return (best == id) ? p : pixel(best);
+    }
+
+    private int[] flat(Map2D other) {
+        if (other.getWidth() != _w || other.getHeight() != _h) {
+            throw new IllegalArgumentException("expected a " + _w + "x" + _h + " map, got "
+                    + other.getWidth() + "x" + other.getHeight());
+        }
+        if (other instanceof Map) return ((Map) other)._map;
+        int[] ans = new int[_map.length];
+        int[][] arr = other.getMap();
+        for (int x = 0; x < _w; x++) System.arraycopy(arr[x], 0, ans, x * _h, _h);
+        return ans;
+    }
+
+    /**
+     * Registers l to be told about every change of this map's cells.
+     */
+    void addListener(MapListener l) {
+        int n = (_listeners == null) ? 0 : _listeners.length;
+        MapListener[] ls = (n == 0) ? new MapListener[1] : Arrays.copyOf(_listeners, n + 1);
+        ls[n] = l;
+        _listeners = ls;
+    }
+
+    void removeListener(MapListener l) {
+        if (_listeners == null) return;
+        for (int i = 0; i < _listeners.length; i++) {
+            if (_listeners[i] != l) continue;
+            MapListener[] ls = new MapListener[_listeners.length - 1];
+            System.arraycopy(_listeners, 0, ls, 0, i);
+            System.arraycopy(_listeners, i + 1, ls, i, ls.length - i);
+            _listeners = (ls.length == 0) ? null : ls;
+            return;
+        }
+    }
+
+    /**
+     * Tells the listeners that any cell may have changed.
+     */
+    private void changed() {
+        _version++;
+        if (_listeners == null) return;
+        for (MapListener l : _listeners) l.mapChanged();
+    }
+
+    /**
+     * @return the contraction hierarchy of obsColor, or null if none is in use.
+     */
+    private ContractionHierarchy hierarchy(int obsColor) {
+        if (_listeners == null) return null;
+        for (MapListener l : _listeners) {
+            if (l instanceof ContractionHierarchy && ((ContractionHierarchy) l).getObsColor() == obsColor) {
+                return (ContractionHierarchy) l;
             }
         }
+        return null;
+    }
 
-        return new Map(dist);
+    /**
+     * @return the component index of obsColor, or null if none was built.
+     */
+    private ComponentIndex components(int obsColor) {
+        if (_listeners == null) return null;
+        for (MapListener l : _listeners) {
+            if (l instanceof ComponentIndex && ((ComponentIndex) l).obsColor() == obsColor) return (ComponentIndex) l;
+        }
+        return null;
+    }
+
+    /**
+     * false only when a component index of obsColor exists and puts s and t apart.
+     */
+    private boolean mayConnect(int s, int t, int obsColor) {
+        ComponentIndex idx = components(obsColor);
+        return idx == null || idx.connected(s, t);
     }
 
-    private static int mod(int a, int m) {
-        int r = a % m;
-        return (r < 0) ? r + m : r;
+    /**
+     * The live flat cell array (not a copy) - for the search engines working on this map.
+     */
+    int[] cells() {
+        return _map;
+    }
+
+    /**
+     * The search workspace of this map for the calling thread.
+     * It is reused between queries, so repeated searches on the same board do not
+     * allocate their queue/visited/parent arrays again. Another thread gets a private one.
+     */
+    MapBfs bfs() {
+        MapBfs b = _bfs;
+        if (b != null && b.fits(this)) return b;
+        b = new MapBfs(this);
+        // keep the owning thread's workspace unless init() replaced the cells under it
+        if (_bfs == null || _bfs.isStale(this)) _bfs = b;
+        return b;
+    }
+
+    /**
+     * Same as bfs(), for lazyDistance(): a lazy run stays open between calls, so it must not
+     * share the workspace that the other searches restart.
+     */
+    private MapBfs lazyBfs() {
+        MapBfs b = _lazyBfs;
+        if (b != null && b.fits(this)) return b;
+        b = new MapBfs(this);
+        if (_lazyBfs == null || _lazyBfs.isStale(this)) _lazyBfs = b;
+        return b;
+    }
+
+    /**
+     * Index of the neighbour of cell id=(x,y) in direction DIRS[d],
+     * or -1 if that step leaves a non-cyclic map.
+     */
+    int neighbour(int id, int x, int y, int d) {
+        switch (d) {
+            case 0: return (y > 0) ? id - 1 : (_cyclicFlag ? id + _h - 1 : -1);
+            case 1: return (x > 0) ? id - _h : (_cyclicFlag ? id + (_w - 1) * _h : -1);
+            case 2: return (y < _h - 1) ? id + 1 : (_cyclicFlag ? id - (_h - 1) : -1);
+            default: return (x < _w - 1) ? id + _h : (_cyclicFlag ? id - (_w - 1) * _h : -1);
+        }
+    }
+
+    private void checkInside(int x, int y) {
+        if (!isInside(x, y)) {
+            throw new ArrayIndexOutOfBoundsException("(" + x + "," + y + ") is outside a " + _w + "x" + _h + " map");
+        }
     }
 }
@@ -0,0 +1,710 @@
+import java.util.Arrays;
+
+/**
+ * Breadth-first search engine over the flat cell array of a Map.
+ * Cells are packed ids (x*h+y), the queue is a preallocated int ring buffer
+ * and parent links are kept in an int array - nothing is allocated per visited cell.
+ * Since every cell is enqueued at most once, the ring never overwrites an entry,
+ * so after a run the buffer also holds the visit order (see visited(i)).
+ *
+ * An instance is a reusable workspace: a Map keeps one per thread (see Map.bfs()).
+ * Cell state is stamped with the current epoch, so starting a new run only bumps
+ * the epoch - dist/parent entries with an old stamp simply count as "not reached".
+ */
+final class MapBfs {
+    private final Map _map;
+    private final int[] _cells;
+    private final Thread _owner;
+    private final int[] _queue;
+    private int _head, _tail, _size, _pushed;
+
+    private final int[] _stamp;
+    private int _epoch;
+    private final int[] _dist;
+    private final int[] _parent;
+    private final int[] _origin;
+
+    // backward side of the bidirectional search, allocated on first use
+    private int[] _bQueue, _bStamp, _bDist, _bParent;
+    private int _meet = -1;
+
+    // open list of the A* / JPS searches, allocated on first use
+    private BucketQueue _open;
+    // JPS: direction (DIRS index) of the jump that reached each jump point, and the length of the last jump
+    private int[] _jumpDir;
+    private int _jumpLen;
+    // JPS+: the horizontal jump of each cell, 2 per cell (toward x-1, toward x+1): k > 0 is a
+    // jump point k steps away, k <= 0 means -k open steps and no jump point (see fillRowJumps()).
+    // A row is filled when first probed and kept while the map version and obstacle color stay
+    private int[] _rowJump;
+    private boolean[] _rowDone;
+    private long _rowVersion = -1;
+    private int _rowObs;
+
+    // seed stack of the scanline fill
+    private int[] _spans = new int[64];
+
+    MapBfs(Map map) {
+        _map = map;
+        _cells = map.cells();
+        _owner = Thread.currentThread();
+        int n = _cells.length;
+        _queue = new int[n];
+        _stamp = new int[n];
+        _dist = new int[n];
+        _parent = new int[n];
+        _origin = new int[n];
+    }
+
+    /**
+     * @return true iff this workspace may serve the current thread on map's current cells.
+     */
+    boolean fits(Map map) {
+        return !isStale(map) && _owner == Thread.currentThread();
+    }
+
+    /**
+     * @return true iff this workspace was not built for map's current cell array.
+     */
+    boolean isStale(Map map) {
+        return _map != map || _cells != map.cells();
+    }
+
+    /**
+     * Runs a BFS from src over the cells that are passable for the given color:
+     * if same is true a cell is passable iff it holds color (flood fill),
+     * otherwise iff it does NOT hold color (obstacle avoiding).
+     * Stops as soon as target is discovered (target = -1 explores everything).
+     * @return true iff target was reached.
+     */
+    boolean run(int src, int color, boolean same, int target) {
+        start();
+        seed(src, 0);
+        if (src == target) return true;
+        return expand(color, same, target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obstacle avoiding BFS from src which stops expanding at depth radius:
+     * exactly the cells within radius steps are reached, the rest of the map is never touched.
+     */
+    void runWithin(int src, int obsColor, int radius) {
+        start();
+        seed(src, 0);
+        expand(obsColor, false, -1, radius);
+    }
+
+    /**
+     * Starts a BFS from src without expanding anything: the caller drives it with
+     * expandNext() (see LazyDistance), and visited(i) grows as it goes.
+     * @return the epoch of the run, which tells whether the workspace was reused since.
+     */
+    int startLazy(int src) {
+        start();
+        seed(src, 0);
+        return _epoch;
+    }
+
+    /** @return the epoch of the last run started on this workspace. */
+    int epoch() {
+        return _epoch;
+    }
+
+    /**
+     * Expands the oldest frontier cell of the current run over the cells not holding obsColor.
+     * @return false if the frontier was empty (the reachable region is exhausted).
+     */
+    boolean expandNext(int obsColor) {
+        if (_size == 0) return false;
+        int h = _map.getHeight();
+        int id = pop();
+        int x = id / h, y = id - x * h;
+        int nd = _dist[id] + 1;
+        for (int d = 0; d < 4; d++) {
+            int n = _map.neighbour(id, x, y, d);
+            if (n < 0 || _stamp[n] == _epoch || _cells[n] == obsColor) continue;
+            reach(n, id, nd);
+            push(n);
+        }
+        return true;
+    }
+
+    /** @return the distance of the next cell expandNext() would expand, or -1 if none is left. */
+    int frontierDistance() {
+        return (_size == 0) ? -1 : _dist[_queue[_head]];
+    }
+
+    /**
+     * Multi-source version of run(): all count first cells of srcs start at distance 0,
+     * so every reached cell gets its distance to the closest source in one pass.
+     * origin(id) tells which source (index into srcs) reached a cell first.
+     */
+    void run(int[] srcs, int count, int color, boolean same) {
+        start();
+        for (int i = 0; i < count; i++) {
+            if (_stamp[srcs[i]] != _epoch) seed(srcs[i], i);
+        }
+        expand(color, same, -1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obstacle avoiding BFS from src which stops as soon as k cells holding color were
+     * discovered (src itself does not count). Their ids are written to hits in discovery
+     * order - which is by distance - and path(hit, out) gives the path to each.
+     * @return the number of hits (less than k if the reachable region holds fewer).
+     */
+    int runNearest(int src, int color, int obsColor, int k, int[] hits) {
+        start();
+        seed(src, 0);
+        int h = _map.getHeight(), found = 0;
+        if (k <= 0) return 0;
+        while (_size > 0) {
+            int id = pop();
+            int x = id / h, y = id - x * h;
+            int nd = _dist[id] + 1;
+
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(id, x, y, d);
+                if (n < 0 || _stamp[n] == _epoch || _cells[n] == obsColor) continue;
+
+                reach(n, id, nd);
+                if (_cells[n] == color) {
+                    hits[found++] = n;
+                    if (found == k) return found;
+                }
+                push(n);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Scanline flood fill: recolors the 4-connected region of old cells around src to newColor.
+     * Works on whole vertical runs (a run of one column is contiguous in the cell array):
+     * a popped seed is widened to its full run, the run is recolored, and one seed is pushed
+     * for each old run it touches in the two neighbouring columns. Recolored cells no longer
+     * hold old, so no visited marks are needed. Runs and columns wrap on a cyclic map.
+     * @return the number of recolored cells.
+     */
+    int fillSpans(int src, int old, int newColor) {
+        int w = _map.getWidth(), h = _map.getHeight();
+        boolean cyclic = _map.isCyclic();
+        int[] cells = _cells;
+        int top = 0, count = 0;
+        _spans[top++] = src;
+
+        while (top > 0) {
+            int id = _spans[--top];
+            if (cells[id] != old) continue;
+            int x = id / h, base = x * h;
+            int y0 = id - base, len = 1;
+
+            // widen to the full run: y0 is its first cell, len its length (may wrap past h-1)
+            if (cyclic) {
+                while (len < h && cells[base + (y0 + len) % h] == old) len++;
+                while (len < h && cells[base + (y0 + h - 1) % h] == old) {
+                    y0 = (y0 + h - 1) % h;
+                    len++;
+                }
+            } else {
+                while (y0 + len < h && cells[base + y0 + len] == old) len++;
+                while (y0 > 0 && cells[base + y0 - 1] == old) {
+                    y0--;
+                    len++;
+                }
+            }
+            for (int i = 0, y = y0; i < len; i++, y = (y + 1 == h) ? 0 : y + 1) cells[base + y] = newColor;
+            count += len;
+
+            // one seed per old run touched in the columns x-1 and x+1
+            for (int side = -1; side <= 1; side += 2) {
+                int nx = x + side;
+                if (nx < 0 || nx >= w) {
+                    if (!cyclic) continue;
+                    nx = (nx + w) % w;
+                }
+                int nBase = nx * h;
+                boolean inRun = false;
+                for (int i = 0, y = y0; i < len; i++, y = (y + 1 == h) ? 0 : y + 1) {
+                    boolean open = cells[nBase + y] == old;
+                    if (open && !inRun) {
+                        if (top == _spans.length) _spans = Arrays.copyOf(_spans, top * 2);
+                        _spans[top++] = nBase + y;
+                    }
+                    inRun = open;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Bidirectional BFS between s and t (s != t) over the non-obstacle cells.
+     * Each round expands one full layer of the smaller frontier; a layer that touches
+     * the other side's visited cells ends the search, keeping the best meeting cell
+     * of that layer - which makes the result a shortest path.
+     * @return true iff t is reachable from s (then pathBidirectional() gives the path).
+     */
+    boolean runBidirectional(int s, int t, int obsColor) {
+        int n = _cells.length;
+        if (_bQueue == null) {
+            _bQueue = new int[n];
+            _bStamp = new int[n];
+            _bDist = new int[n];
+            _bParent = new int[n];
+        }
+        start();
+
+        reach(s, s, 0);
+        _queue[0] = s;
+        _bStamp[t] = _epoch;
+        _bDist[t] = 0;
+        _bParent[t] = t;
+        _bQueue[0] = t;
+
+        int fHead = 0, fTail = 1, bHead = 0, bTail = 1;
+        int best = Integer.MAX_VALUE;
+        _meet = -1;
+        int h = _map.getHeight();
+
+        while (fHead < fTail && bHead < bTail) {
+            boolean forward = (fTail - fHead) <= (bTail - bHead);
+            int[] q = forward ? _queue : _bQueue;
+            int[] stamp = forward ? _stamp : _bStamp;
+            int[] dist = forward ? _dist : _bDist;
+            int[] parent = forward ? _parent : _bParent;
+            int[] otherStamp = forward ? _bStamp : _stamp;
+            int[] otherDist = forward ? _bDist : _dist;
+
+            int head = forward ? fHead : bHead;
+            int tail = forward ? fTail : bTail;
+            int end = tail;
+            while (head < end) {
+                int id = q[head++];
+                int x = id / h, y = id - x * h;
+                int nd = dist[id] + 1;
+                for (int d = 0; d < 4; d++) {
+                    int nb = _map.neighbour(id, x, y, d);
+                    if (nb < 0 || stamp[nb] == _epoch || _cells[nb] == obsColor) continue;
+                    stamp[nb] = _epoch;
+                    dist[nb] = nd;
+                    parent[nb] = id;
+                    q[tail++] = nb;
+                    if (otherStamp[nb] == _epoch && nd + otherDist[nb] < best) {
+                        best = nd + otherDist[nb];
+                        _meet = nb;
+                    }
+                }
+            }
+            if (forward) { fHead = head; fTail = tail; } else { bHead = head; bTail = tail; }
+            if (_meet != -1) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the path found by the last successful runBidirectional().
+     */
+    Pixel2D[] pathBidirectional() {
+        Pixel2D[] ans = new Pixel2D[_dist[_meet] + _bDist[_meet] + 1];
+        int i = _dist[_meet];
+        for (int c = _meet; i >= 0; i--, c = _parent[c]) {
+            ans[i] = _map.pixel(c);
+        }
+        i = _dist[_meet];
+        for (int c = _meet; c != _bParent[c]; ) {
+            c = _bParent[c];
+            ans[++i] = _map.pixel(c);
+        }
+        return ans;
+    }
+
+    /**
+     * A* search from s to t over the non-obstacle cells, with the Manhattan distance as
+     * heuristic - measured around the wrap when the map is cyclic, so it never
+     * overestimates. The heuristic is consistent and steps cost 1, so f grows by 0, 1 or 2
+     * per step (1 on a cyclic map with an odd side, where the wrapped distance to t can stay
+     * the same across a step) and a 3-bucket Dial queue is an exact open list.
+     * @return true iff t was reached (then path(t, out) gives the path).
+     */
+    boolean runAStar(int s, int t, int obsColor) {
+        if (_open == null) _open = new BucketQueue();
+        newEpoch();
+
+        int h = _map.getHeight();
+        int tx = t / h, ty = t % h;
+        reach(s, s, 0);
+        _open.reset(3, heuristic(s / h, s % h, tx, ty));
+        _open.push(s, _open.lastKey());
+
+        while (!_open.isEmpty()) {
+            int id = _open.pop();
+            int x = id / h, y = id - x * h;
+            int g = _dist[id];
+            // a stale entry: id was pushed again later with a smaller g
+            if (g + heuristic(x, y, tx, ty) != _open.lastKey()) continue;
+            if (id == t) return true;
+
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(id, x, y, d);
+                if (n < 0 || _cells[n] == obsColor) continue;
+                if (_stamp[n] == _epoch && _dist[n] <= g + 1) continue;
+
+                reach(n, id, g + 1);
+                int nx = n / h;
+                _open.push(n, g + 1 + heuristic(nx, n - nx * h, tx, ty));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Dijkstra from s over the non-obstacle cells, where entering cell v costs
+     * 1 + cost[v], clamped to [0, maxCost]. Step costs are small integers (at most maxCost+1), so a Dial
+     * bucket queue of maxCost+2 buckets is an exact open list; stale entries are skipped
+     * when popped. The search stops when the target is settled: the cell target, or when
+     * target is -1, the first cell other than s which holds targetColor.
+     * @return the settled target (then pathByParents(target, out) gives the path), or -1.
+     */
+    int runWeighted(int s, int target, int targetColor, int obsColor, int[] cost, int maxCost) {
+        if (_open == null) _open = new BucketQueue();
+        newEpoch();
+
+        int h = _map.getHeight();
+        reach(s, s, 0);
+        _open.reset(maxCost + 2, 0);
+        _open.push(s, 0);
+
+        while (!_open.isEmpty()) {
+            int id = _open.pop();
+            int g = _dist[id];
+            if (g != _open.lastKey()) continue;   // stale: pushed again with a smaller cost
+            if (id == target || (target == -1 && id != s && _cells[id] == targetColor)) return id;
+
+            int x = id / h, y = id - x * h;
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(id, x, y, d);
+                if (n < 0 || _cells[n] == obsColor) continue;
+                int ng = g + 1 + Math.max(0, Math.min(maxCost, cost[n]));
+                if (_stamp[n] == _epoch && _dist[n] <= ng) continue;
+
+                reach(n, id, ng);
+                _open.push(n, ng);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Jump Point Search (the 4-connected variant) from s to t over the non-obstacle cells.
+     * Canonical paths go vertically first: a vertical jump scans horizontally from every
+     * cell it passes, and a horizontal jump may only turn at a "forced" cell - one whose
+     * vertical neighbour is open while the same neighbour of the previous cell is blocked.
+     * Only such jump points enter the open list (an A* over jump points, same heuristic as
+     * runAStar()), so symmetric paths in open areas are never expanded one by one.
+     * Jumps follow the cyclic wrap and stop after a full turn around a row or column.
+     * Horizontal jumps are read from per-row tables (JPS+), so the probes a vertical jump
+     * makes at every cell cost O(1) instead of a scan along the row.
+     * @return true iff t was reached (then pathJps(s, t) gives the path).
+     */
+    boolean runJps(int s, int t, int obsColor) {
+        if (_open == null) _open = new BucketQueue();
+        if (_jumpDir == null) _jumpDir = new int[_cells.length];
+        if (_rowJump == null) {
+            _rowJump = new int[2 * _cells.length];
+            _rowDone = new boolean[_map.getHeight()];
+        }
+        if (_rowVersion != _map.version() || _rowObs != obsColor) {
+            Arrays.fill(_rowDone, false);
+            _rowVersion = _map.version();
+            _rowObs = obsColor;
+        }
+        newEpoch();
+
+        int w = _map.getWidth(), h = _map.getHeight();
+        int tx = t / h, ty = t % h;
+        reach(s, s, 0);
+        _jumpDir[s] = -1;
+        // f grows by at most twice the jump length, and a jump is at most one turn around the map
+        _open.reset(2 * Math.max(w, h) + 1, heuristic(s / h, s % h, tx, ty));
+        _open.push(s, _open.lastKey());
+
+        while (!_open.isEmpty()) {
+            int id = _open.pop();
+            int x = id / h, y = id - x * h;
+            int g = _dist[id];
+            if (g + heuristic(x, y, tx, ty) != _open.lastKey()) continue;
+            if (id == t) return true;
+
+            int in = _jumpDir[id];
+            for (int d = 0; d < 4; d++) {
+                if (!isJpsSuccessor(id, in, d, obsColor)) continue;
+                int j = (d == 0 || d == 2) ? jumpVertical(id, d, t, obsColor) : jumpHorizontal(id, d, t, obsColor);
+                if (j < 0) continue;
+                int ng = g + _jumpLen;
+                if (_stamp[j] == _epoch && _dist[j] <= ng) continue;
+
+                reach(j, id, ng);
+                _jumpDir[j] = d;
+                int jx = j / h;
+                _open.push(j, ng + heuristic(jx, j - jx * h, tx, ty));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the full step-by-step path of the last successful runJps(s, t).
+     */
+    Pixel2D[] pathJps(int s, int t) {
+        Pixel2D[] ans = new Pixel2D[_dist[t] + 1];
+        int i = ans.length - 1;
+        int c = t;
+        ans[i] = _map.pixel(c);
+        while (c != s) {
+            int p = _parent[c];
+            int back = (_jumpDir[c] + 2) % 4;
+            while (c != p) {
+                c = step(c, back);
+                ans[--i] = _map.pixel(c);
+            }
+        }
+        return ans;
+    }
+
+    private boolean isJpsSuccessor(int id, int in, int d, int obsColor) {
+        if (in == -1) return true;
+        if (d == (in + 2) % 4) return false;
+        if (in == 0 || in == 2) return true; // after a vertical move everything but going back is natural
+        if (d == in) return true;
+        // moving horizontally: turning up/down only pays off at a forced cell
+        int prev = step(id, (in + 2) % 4);
+        int b = step(prev, d);
+        return b < 0 || _cells[b] == obsColor;
+    }
+
+    private int jumpVertical(int id, int d, int t, int obsColor) {
+        int from = id, len = 0;
+        while (true) {
+            int n = step(id, d);
+            if (n < 0 || n == from || _cells[n] == obsColor) return -1;
+            len++;
+            if (n == t || jumpHorizontal(n, 1, t, obsColor) >= 0 || jumpHorizontal(n, 3, t, obsColor) >= 0) {
+                _jumpLen = len;
+                return n;
+            }
+            id = n;
+        }
+    }
+
+    private int jumpHorizontal(int id, int d, int t, int obsColor) {
+        int w = _map.getWidth(), h = _map.getHeight();
+        int x = id / h, y = id - x * h;
+        int side = (d == 1) ? 0 : 1;
+        if (!_rowDone[y]) {
+            fillRowJumps(y, obsColor);
+            _rowDone[y] = true;
+        }
+        int k = _rowJump[2 * id + side];
+        int open = (k > 0) ? k : -k;
+
+        // t is met before (or at) the jump point if it lies in this row within the open run
+        int tx = t / h;
+        if (t - tx * h == y) {
+            int toT = (side == 0) ? x - tx : tx - x;
+            if (_map.isCyclic()) toT = ((toT % w) + w) % w;
+            if (toT > 0 && toT <= open) {
+                _jumpLen = toT;
+                return t;
+            }
+        }
+        if (k <= 0) return -1;
+        _jumpLen = k;
+        int jx = (side == 0) ? x - k : x + k;
+        return ((jx % w + w) % w) * h + y;
+    }
+
+    /**
+     * Fills the horizontal jumps of row y, both ways, in one pass per direction: each cell's
+     * jump follows from the one of the next cell, starting at a cell whose next step is a wall,
+     * the border or a forced cell. A cyclic row with none of those is an open ring, where a jump
+     * goes around once and stops.
+     */
+    private void fillRowJumps(int y, int obsColor) {
+        int w = _map.getWidth(), h = _map.getHeight();
+        boolean cyclic = _map.isCyclic();
+        for (int side = 0; side < 2; side++) {
+            int d = (side == 0) ? 1 : 3;
+            int back = (side == 0) ? 1 : w - 1;     // x of the cell before, mod w
+            int anchor = -1;
+            if (!cyclic) {
+                anchor = (side == 0) ? 0 : w - 1;
+            } else {
+                for (int x = 0; x < w && anchor < 0; x++) {
+                    int id = x * h + y;
+                    int n = step(id, d);
+                    if (n != id && (_cells[n] == obsColor || isForced(id, n, 0, obsColor) || isForced(id, n, 2, obsColor))) {
+                        anchor = x;
+                    }
+                }
+            }
+            if (anchor < 0) {
+                for (int x = 0; x < w; x++) _rowJump[2 * (x * h + y) + side] = -(w - 1);
+                continue;
+            }
+            for (int i = 0, x = anchor; i < w; i++, x = (x + back) % w) {
+                int id = x * h + y;
+                int n = step(id, d);
+                int k;
+                if (n < 0 || _cells[n] == obsColor) {
+                    k = 0;
+                } else if (isForced(id, n, 0, obsColor) || isForced(id, n, 2, obsColor)) {
+                    k = 1;
+                } else {
+                    int next = _rowJump[2 * n + side];
+                    k = (next > 0) ? next + 1 : next - 1;
+                }
+                // past a full turn the jump would come back to its own cell
+                if (cyclic && (k >= w || k <= -w)) k = -(w - 1);
+                _rowJump[2 * id + side] = k;
+            }
+        }
+    }
+
+    /**
+     * True iff moving horizontally from prev to n, the vertical neighbour of n in direction p
+     * is open while the one of prev is not (so it can not be reached "vertically first").
+     */
+    private boolean isForced(int prev, int n, int p, int obsColor) {
+        int a = step(n, p);
+        if (a < 0 || _cells[a] == obsColor) return false;
+        int b = step(prev, p);
+        return b < 0 || _cells[b] == obsColor;
+    }
+
+    private int step(int id, int d) {
+        int h = _map.getHeight();
+        int x = id / h;
+        return _map.neighbour(id, x, id - x * h, d);
+    }
+
+    /**
+     * The number of steps between (x1,y1) and (x2,y2) on an empty copy of the map.
+     */
+    int heuristic(int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x1 - x2), dy = Math.abs(y1 - y2);
+        if (_map.isCyclic()) {
+            dx = Math.min(dx, _map.getWidth() - dx);
+            dy = Math.min(dy, _map.getHeight() - dy);
+        }
+        return dx + dy;
+    }
+
+    private boolean expand(int color, boolean same, int target, int maxDepth) {
+        int h = _map.getHeight();
+        while (_size > 0) {
+            int id = pop();
+            // FIFO order: once one cell is at maxDepth, all the remaining ones are too
+            if (_dist[id] >= maxDepth) break;
+            int x = id / h, y = id - x * h;
+            int nd = _dist[id] + 1;
+
+            for (int d = 0; d < 4; d++) {
+                int n = _map.neighbour(id, x, y, d);
+                if (n < 0 || _stamp[n] == _epoch) continue;
+                if ((_cells[n] == color) != same) continue;
+
+                reach(n, id, nd);
+                _origin[n] = _origin[id];
+                if (n == target) return true;
+                push(n);
+            }
+        }
+        return false;
+    }
+
+    /** @return the BFS distance of cell id in the last run, -1 if it was not reached. */
+    int distance(int id) {
+        return (_stamp[id] == _epoch) ? _dist[id] : -1;
+    }
+
+    /** @return the cell id was discovered from in the last run (id itself for a source). */
+    int parent(int id) {
+        return _parent[id];
+    }
+
+    /** @return the index of the source that reached cell id in the last run, -1 if none did. */
+    int origin(int id) {
+        return (_stamp[id] == _epoch) ? _origin[id] : -1;
+    }
+
+    /** @return the number of cells enqueued by the last run. */
+    int visitedCount() {
+        return _pushed;
+    }
+
+    /** @return the i-th cell enqueued by the last run (BFS order). */
+    int visited(int i) {
+        return _queue[i];
+    }
+
+    /**
+     * Writes the path src..t of the last run (from its parent links) into out.
+     * Only called once t was reached; nothing is allocated once out has grown.
+     */
+    void path(int t, PathBuffer out) {
+        int[] cells = out.prepare(_map.pixels(), _dist[t] + 1);
+        for (int i = _dist[t], c = t; i >= 0; i--, c = _parent[c]) cells[i] = c;
+    }
+
+    /**
+     * Writes the path src..t of the last run into out, for runs whose distances are costs
+     * rather than step counts (the parent chain is walked twice: to count, then to write).
+     */
+    void pathByParents(int t, PathBuffer out) {
+        int steps = 0;
+        for (int c = t; _parent[c] != c; c = _parent[c]) steps++;
+        int[] cells = out.prepare(_map.pixels(), steps + 1);
+        for (int i = steps, c = t; i >= 0; i--, c = _parent[c]) cells[i] = c;
+    }
+
+    private void start() {
+        newEpoch();
+        _head = _tail = _size = _pushed = 0;
+    }
+
+    private void seed(int id, int label) {
+        reach(id, id, 0);
+        _origin[id] = label;
+        push(id);
+    }
+
+    private void newEpoch() {
+        if (++_epoch == 0) {
+            // wrapped around after 2^32 runs: old stamps could look current again
+            Arrays.fill(_stamp, 0);
+            if (_bStamp != null) Arrays.fill(_bStamp, 0);
+            _epoch = 1;
+        }
+    }
+
+    private void reach(int id, int from, int d) {
+        _stamp[id] = _epoch;
+        _dist[id] = d;
+        _parent[id] = from;
+    }
+
+    private void push(int id) {
+        _queue[_tail] = id;
+        _tail = (_tail + 1 == _queue.length) ? 0 : _tail + 1;
+        _size++;
+        _pushed++;
+    }
+
+    private int pop() {
+        int id = _queue[_head];
+        _head = (_head + 1 == _queue.length) ? 0 : _head + 1;
+        _size--;
+        return id;
+    }
+}
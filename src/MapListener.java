@@ -0,0 +1,15 @@
+/**
+ * Observer of the cells of a Map (see Map.addListener()), used by the indexes that are
+ * kept up to date incrementally. A map without listeners pays a single null check per write.
+ */
+interface MapListener {
+    /**
+     * The cell id (x*h+y) changed from oldV to newV (called only when they differ).
+     */
+    void cellChanged(int cell, int oldV, int newV);
+
+    /**
+     * Many cells (or the dimensions, or the cyclic flag) may have changed at once.
+     */
+    void mapChanged();
+}
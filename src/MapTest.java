@@ -1,5 +1,11 @@
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MapTest {
@@ -74,6 +80,15 @@ public class MapTest {
         assertEquals(4, m.getPixel(1, 1));
     }
 
+    @Test
+    void getPixel_outsideColumn_doesNotAliasNextColumn() {
+        Map m = new Map(3, 2, 0);
+        m.setPixel(1, 0, 5);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> m.getPixel(0, 2));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> m.setPixel(2, -1, 5));
+        assertEquals(5, m.getMap()[1][0]);
+    }
+
     @Test
     void isInside_basic() {
         Map m = new Map(3, 2, 0);
@@ -138,6 +153,31 @@ public class MapTest {
         assertEquals(7, m.getPixel(2, 0));
     }
 
+    @Test
+    void fill_randomMaps_matchesConnectedComponent() {
+        for (int seed = 0; seed < 200; seed++) {
+            int w = 1 + seed % 11, h = 1 + seed % 7;
+            Map m = RandomMaps.randomMap(seed, w, h, 0.45, seed % 2 == 0);
+            Pixel2D s = new Index2D(seed % w, (seed / 3) % h);
+            int old = m.getPixel(s);
+
+            // the region of old cells is what a BFS avoiding the other color reaches
+            Map2D region = m.allDistance(s, old == OBS ? 0 : OBS);
+            Map before = new Map(m.getMap());
+            int changed = m.fill(s, 9);
+
+            int expected = 0;
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    boolean in = before.getPixel(x, y) == old && region.getPixel(x, y) >= 0;
+                    if (in) expected++;
+                    assertEquals(in ? 9 : before.getPixel(x, y), m.getPixel(x, y));
+                }
+            }
+            assertEquals(expected, changed);
+        }
+    }
+
     @Test
     void shortestPath_sameStartEnd_returnsSinglePixel() {
         Map m = new Map(4, 4, 0);
@@ -285,4 +325,581 @@ public class MapTest {
         assertEquals(1, d.getPixel(1, 0));
         assertEquals(2, d.getPixel(2, 0));
     }
+
+    @Test
+    void shortestPath_randomBoards_lengthMatchesAllDistance() {
+        for (int seed = 0; seed < 40; seed++) {
+            Map m = RandomMaps.randomMap(seed, 9, 7, 0.3, seed % 2 == 0);
+            Pixel2D s = new Index2D(seed % 9, seed % 7);
+            Map2D d = m.allDistance(s, OBS);
+            for (int x = 0; x < 9; x++) {
+                for (int y = 0; y < 7; y++) {
+                    Pixel2D t = new Index2D(x, y);
+                    Pixel2D[] path = m.shortestPath(s, t, OBS);
+                    if (m.getPixel(s) == OBS || m.getPixel(t) == OBS || d.getPixel(t) == -1) {
+                        assertNull(path);
+                        continue;
+                    }
+                    assertPathValid4Neighbors(m, path, OBS);
+                    assertEquals(d.getPixel(t), path.length - 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    void repeatedQueries_reuseWorkspace_resultsIndependent() {
+        Map m = new Map(6, 6, 0);
+        m.setCyclic(false);
+        m.setPixel(2, 0, OBS);
+        m.setPixel(2, 1, OBS);
+        m.setPixel(2, 2, OBS);
+
+        Map2D d1 = m.allDistance(new Index2D(0, 0), OBS);
+        Map2D d2 = m.allDistance(new Index2D(5, 0), OBS);
+        assertEquals(0, d1.getPixel(0, 0));
+        assertEquals(0, d2.getPixel(5, 0));
+        assertEquals(d1.getPixel(5, 0), d2.getPixel(0, 0));
+
+        Pixel2D[] path = m.shortestPath(new Index2D(0, 0), new Index2D(5, 0), OBS);
+        assertEquals(d1.getPixel(5, 0) + 1, path.length);
+
+        // re-init swaps the cell array; the next query must not use the old workspace
+        m.init(3, 1, 0);
+        assertEquals(2, m.allDistance(new Index2D(0, 0), OBS).getPixel(2, 0));
+    }
+
+    @Test
+    void allDistance_multiSource_isMinOfSingleSources_withLabels() {
+        for (int seed = 0; seed < 20; seed++) {
+            Map m = RandomMaps.randomMap(seed, 8, 9, 0.25, seed % 2 == 1);
+            Pixel2D[] src = {new Index2D(1, 1), null, new Index2D(6, 2), new Index2D(3, 8)};
+            SourceDistances labeled = m.allDistanceLabeled(src, OBS);
+            Map2D all = labeled.getDistances();
+            Map2D labels = labeled.getLabels();
+            assertEquals(8, labels.getWidth());
+            assertEquals(9, labels.getHeight());
+            assertArrayEquals(all.getMap(), m.allDistance(src, OBS).getMap());
+
+            for (int x = 0; x < 8; x++) {
+                for (int y = 0; y < 9; y++) {
+                    if (m.getPixel(x, y) == OBS) {
+                        assertEquals(OBS, all.getPixel(x, y));
+                        assertEquals(-1, labels.getPixel(x, y));
+                        continue;
+                    }
+                    int best = -1;
+                    for (Pixel2D s : src) {
+                        if (s == null || m.getPixel(s) == OBS) continue;
+                        int d = m.allDistance(s, OBS).getPixel(x, y);
+                        if (d >= 0 && (best == -1 || d < best)) best = d;
+                    }
+                    assertEquals(best, all.getPixel(x, y));
+                    int o = labels.getPixel(x, y);
+                    if (best == -1) {
+                        assertEquals(-1, o);
+                    } else {
+                        assertEquals(best, m.allDistance(src[o], OBS).getPixel(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void distancesWithin_matchesAllDistanceInsideRadius() {
+        for (int seed = 0; seed < 20; seed++) {
+            Map m = RandomMaps.randomMap(seed, 10, 10, 0.2, seed % 2 == 0);
+            Pixel2D s = new Index2D(5, 5);
+            m.setPixel(s, 0);
+            Map2D all = m.allDistance(s, OBS);
+            BoundedDistance near = m.distancesWithin(s, OBS, 3);
+
+            int expectedSize = 0;
+            for (int x = 0; x < 10; x++) {
+                for (int y = 0; y < 10; y++) {
+                    int d = all.getPixel(x, y);
+                    boolean in = m.getPixel(x, y) != OBS && d >= 0 && d <= 3;
+                    if (in) expectedSize++;
+                    assertEquals(in ? d : -1, near.distanceTo(new Index2D(x, y)));
+                }
+            }
+            assertEquals(expectedSize, near.size());
+            for (int i = 1; i < near.size(); i++) {
+                assertTrue(near.getDistance(i - 1) <= near.getDistance(i));
+            }
+        }
+        assertNull(new Map(3, 3, OBS).distancesWithin(new Index2D(1, 1), OBS, 2));
+        assertEquals(-1, new Map(3, 3, 0).distancesWithin(new Index2D(1, 1), OBS, 2).distanceTo(new Index2D(1, 3)));
+    }
+
+    @Test
+    void shortestPathBidirectional_sameLengthAsBfs() {
+        for (int seed = 0; seed < 40; seed++) {
+            Map m = RandomMaps.randomMap(seed, 11, 8, 0.3, seed % 2 == 0);
+            Pixel2D s = new Index2D(seed % 11, seed % 8);
+            for (int x = 0; x < 11; x++) {
+                for (int y = 0; y < 8; y++) {
+                    Pixel2D t = new Index2D(x, y);
+                    Pixel2D[] expected = m.shortestPath(s, t, OBS);
+                    Pixel2D[] path = m.shortestPathBidirectional(s, t, OBS);
+                    if (expected == null) {
+                        assertNull(path);
+                        continue;
+                    }
+                    assertPathValid4Neighbors(m, path, OBS);
+                    assertEquals(expected.length, path.length);
+                    assertEquals(s, path[0]);
+                    assertEquals(t, path[path.length - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void shortestPathAStar_sameLengthAsBfs() {
+        for (int seed = 0; seed < 40; seed++) {
+            Map m = RandomMaps.randomMap(seed, 9, 12, 0.3, seed % 2 == 1);
+            Pixel2D s = new Index2D(seed % 9, seed % 12);
+            for (int x = 0; x < 9; x++) {
+                for (int y = 0; y < 12; y++) {
+                    Pixel2D t = new Index2D(x, y);
+                    Pixel2D[] expected = m.shortestPath(s, t, OBS);
+                    Pixel2D[] path = m.shortestPathAStar(s, t, OBS);
+                    if (expected == null) {
+                        assertNull(path);
+                        continue;
+                    }
+                    assertPathValid4Neighbors(m, path, OBS);
+                    assertEquals(expected.length, path.length);
+                    assertEquals(s, path[0]);
+                    assertEquals(t, path[path.length - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void shortestPathJps_sameLengthAsBfs() {
+        for (int seed = 0; seed < 60; seed++) {
+            Map m = RandomMaps.randomMap(seed, 3 + seed % 10, 2 + seed % 7, 0.05 * (seed % 8), seed % 2 == 0);
+            int w = m.getWidth(), h = m.getHeight();
+            Pixel2D s = new Index2D(seed % w, seed % h);
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) {
+                    Pixel2D t = new Index2D(x, y);
+                    Pixel2D[] expected = m.shortestPath(s, t, OBS);
+                    Pixel2D[] path = m.shortestPathJps(s, t, OBS);
+                    if (expected == null) {
+                        assertNull(path);
+                        continue;
+                    }
+                    assertPathValid4Neighbors(m, path, OBS);
+                    assertEquals(expected.length, path.length);
+                    assertEquals(s, path[0]);
+                    assertEquals(t, path[path.length - 1]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void shortestPathJps_followsWallChanges_betweenQueries() {
+        Random r = new Random(8);
+        for (int round = 0; round < 10; round++) {
+            Map m = RandomMaps.randomMap(r, 6 + r.nextInt(20), 4 + r.nextInt(15), 0.15, round % 2 == 0);
+            int w = m.getWidth(), h = m.getHeight();
+            for (int q = 0; q < 60; q++) {
+                // the row jumps of the previous query must not be reused after a change
+                m.setPixel(r.nextInt(w), r.nextInt(h), r.nextInt(3) == 0 ? OBS : 0);
+                Pixel2D s = new Index2D(r.nextInt(w), r.nextInt(h));
+                Pixel2D t = new Index2D(r.nextInt(w), r.nextInt(h));
+                Pixel2D[] expected = m.shortestPath(s, t, OBS);
+                Pixel2D[] path = m.shortestPathJps(s, t, OBS);
+                if (expected == null) {
+                    assertNull(path);
+                    continue;
+                }
+                assertPathValid4Neighbors(m, path, OBS);
+                assertEquals(expected.length, path.length);
+            }
+        }
+    }
+
+    @Test
+    void shortestPathJps_openCyclicRow_goesAroundTheShortWay() {
+        Map m = new Map(40, 1, 0);
+        Pixel2D[] path = m.shortestPathJps(new Index2D(1, 0), new Index2D(38, 0), OBS);
+        assertEquals(4, path.length);
+        assertPixelEquals(path[1], 0, 0);
+        assertPixelEquals(path[2], 39, 0);
+    }
+
+    @Test
+    void fieldAlgebra_elementWise() {
+        Map a = new Map(new int[][]{{1, 5}, {-2, 7}});
+        Map b = new Map(new int[][]{{3, 2}, {-1, 9}});
+
+        Map m = new Map(a.getMap());
+        m.min(b);
+        assertArrayEquals(new int[][]{{1, 2}, {-2, 7}}, m.getMap());
+
+        m = new Map(a.getMap());
+        m.max(b);
+        assertArrayEquals(new int[][]{{3, 5}, {-1, 9}}, m.getMap());
+
+        m = new Map(a.getMap());
+        m.add(b);
+        m.clamp(0, 10);
+        assertArrayEquals(new int[][]{{4, 7}, {0, 10}}, m.getMap());
+
+        m = new Map(a.getMap());
+        m.mul(a.threshold(2));
+        assertArrayEquals(new int[][]{{0, 5}, {0, 7}}, m.getMap());
+        assertArrayEquals(new int[][]{{0, 1}, {1, 1}}, a.notEqualMask(1).getMap());
+
+        assertThrows(IllegalArgumentException.class, () -> a.min(new Map(3, 2, 0)));
+    }
+
+    @Test
+    void argmaxNeighbor_picksLargestNeighbour_orStays() {
+        Map m = new Map(3, 3, 0);
+        m.setCyclic(false);
+        m.setPixel(1, 1, 4);
+        m.setPixel(2, 1, 6);
+        m.setPixel(1, 0, 5);
+        assertPixelEquals(m.argmaxNeighbor(new Index2D(1, 1)), 2, 1);
+
+        m.setPixel(2, 1, 1);
+        m.setPixel(1, 0, 1);
+        Pixel2D p = new Index2D(1, 1);
+        assertSame(p, m.argmaxNeighbor(p));
+
+        // cyclic: (0,1)'s left neighbour is (2,1)
+        m.setCyclic(true);
+        m.setPixel(2, 1, 9);
+        assertPixelEquals(m.argmaxNeighbor(new Index2D(0, 1)), 2, 1);
+    }
+
+    @Test
+    void isConnected_followsSetPixel_matchesBfs() {
+        Random r = new Random(15);
+        for (int round = 0; round < 30; round++) {
+            int w = 3 + r.nextInt(10), h = 3 + r.nextInt(8);
+            Map m = RandomMaps.randomMap(round, w, h, 0.3, round % 2 == 0);
+            for (int step = 0; step < 60; step++) {
+                if (step % 3 != 0) {
+                    int x = r.nextInt(w), y = r.nextInt(h);
+                    m.setPixel(x, y, m.getPixel(x, y) == OBS ? 0 : OBS);
+                }
+                Pixel2D a = new Index2D(r.nextInt(w), r.nextInt(h));
+                Map2D d = m.allDistance(a, OBS);
+                for (int x = 0; x < w; x++) {
+                    for (int y = 0; y < h; y++) {
+                        boolean expected = m.getPixel(a) != OBS && m.getPixel(x, y) != OBS && d.getPixel(x, y) >= 0;
+                        assertEquals(expected, m.isConnected(a, new Index2D(x, y), OBS));
+                    }
+                }
+            }
+            // bulk changes are seen as well
+            m.fill(new Index2D(0, 0), OBS);
+            m.setCyclic(!m.isCyclic());
+            Pixel2D a = new Index2D(w - 1, h - 1), b = new Index2D(1, 1);
+            Map2D d = m.allDistance(a, OBS);
+            assertEquals(m.getPixel(a) != OBS && m.getPixel(b) != OBS && d.getPixel(b) >= 0, m.isConnected(a, b, OBS));
+        }
+    }
+
+    @Test
+    void shortestPath_withComponentIndex_rejectsOtherComponent() {
+        Map m = new Map(5, 5, 0);
+        m.setCyclic(false);
+        for (int y = 0; y < 5; y++) m.setPixel(2, y, OBS);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(4, 4);
+        assertFalse(m.isConnected(a, b, OBS));
+        assertNull(m.shortestPath(a, b, OBS));
+        assertNull(m.shortestPathAStar(a, b, OBS));
+
+        m.setPixel(2, 3, 0);
+        assertTrue(m.isConnected(a, b, OBS));
+        assertEquals(9, m.shortestPath(a, b, OBS).length);
+        assertEquals(9, m.shortestPathJps(a, b, OBS).length);
+    }
+
+    @Test
+    void packedCells_encodeDecodeAndStep() {
+        Map m = new Map(4, 3, 0);
+        m.setCyclic(false);
+        int c = m.cellOf(2, 1);
+        assertEquals(2, m.cellX(c));
+        assertEquals(1, m.cellY(c));
+        m.setPixel(2, 1, 7);
+        assertEquals(7, m.getCell(c));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> m.cellOf(4, 0));
+
+        int corner = m.cellOf(0, 0);
+        assertEquals(-1, m.step(corner, 0));
+        assertEquals(m.cellOf(0, 1), m.step(corner, 2));
+        int[] out = new int[4];
+        assertEquals(2, m.neighbours(corner, out));
+
+        m.setCyclic(true);
+        assertEquals(m.cellOf(0, 2), m.step(corner, 0));
+        assertEquals(m.cellOf(3, 0), m.step(corner, 1));
+        assertEquals(4, m.neighbours(corner, out));
+        assertArrayEquals(new int[]{m.cellOf(0, 2), m.cellOf(3, 0), m.cellOf(0, 1), m.cellOf(1, 0)}, out);
+    }
+
+    @Test
+    void pixel_isInternedPerMap() {
+        Map a = new Map(5, 4, 0), b = new Map(5, 4, 1);
+        Pixel2D p = a.pixel(a.cellOf(3, 2));
+        assertPixelEquals(p, 3, 2);
+        assertSame(p, a.pixel(a.cellOf(3, 2)));
+        // each map owns its table, so nothing outlives the map
+        assertEquals(p, b.pixel(b.cellOf(3, 2)));
+        assertNotSame(p, b.pixel(b.cellOf(3, 2)));
+
+        // paths hand out the interned pixels as well
+        Pixel2D[] path = a.shortestPath(new Index2D(0, 0), new Index2D(3, 2), OBS);
+        assertSame(p, path[path.length - 1]);
+
+        a.init(4, 5, 0);
+        assertPixelEquals(a.pixel(a.cellOf(3, 2)), 3, 2);
+    }
+
+    @Test
+    void pathBufferDirection_isAValidStep_onTwoWideBoards() {
+        PathBuffer buf = new PathBuffer();
+        Random r = new Random(18);
+        for (int round = 0; round < 200; round++) {
+            int w = 1 + r.nextInt(3), h = (w == 2) ? 1 + r.nextInt(3) : 2;
+            Map m = new Map(w, h, 0);
+            m.setCyclic(r.nextBoolean());
+            Pixel2D s = new Index2D(r.nextInt(w), r.nextInt(h)), t = new Index2D(r.nextInt(w), r.nextInt(h));
+            assertTrue(m.shortestPath(s, t, OBS, buf));
+            for (int i = 0; i + 1 < buf.length(); i++) {
+                assertEquals(buf.cell(i + 1), m.step(buf.cell(i), buf.direction(i)), "step " + i + " of " + buf);
+            }
+        }
+        // the case which used to come out as y+1 on a non-cyclic 1x2 board
+        Map m = new Map(1, 2, 0);
+        m.setCyclic(false);
+        assertTrue(m.shortestPath(new Index2D(0, 1), new Index2D(0, 0), OBS, buf));
+        assertEquals(0, buf.direction(0));
+    }
+
+    @Test
+    void shortestPath_intoPathBuffer_sameAsPixels_withDirectionsAndCursor() {
+        PathBuffer buf = new PathBuffer();
+        for (int seed = 0; seed < 40; seed++) {
+            Map m = RandomMaps.randomMap(seed, 8, 6, 0.25, seed % 2 == 0);
+            Pixel2D s = new Index2D(seed % 8, seed % 6), t = new Index2D(7 - seed % 8, 5 - seed % 6);
+            Pixel2D[] expected = m.shortestPath(s, t, OBS);
+            boolean found = m.shortestPath(s, t, OBS, buf);
+            assertEquals(expected != null, found);
+            if (!found) {
+                assertTrue(buf.isEmpty());
+                continue;
+            }
+            assertArrayEquals(expected, buf.toPixels());
+
+            // walking the directions from s reproduces the cells
+            for (int i = 0; i + 1 < buf.length(); i++) {
+                int[] d = Map.DIRS[buf.direction(i)];
+                int x = (buf.getX(i) + d[0] + 8) % 8, y = (buf.getY(i) + d[1] + 6) % 6;
+                assertEquals(m.cellOf(x, y), buf.cell(i + 1));
+            }
+
+            assertTrue(m.shortestPathAStar(s, t, OBS, buf));
+            assertEquals(expected.length, buf.length());
+            assertEquals(m.cellOf(s), buf.current());
+            int steps = 0;
+            while (buf.hasNext()) {
+                buf.next();
+                steps++;
+            }
+            assertEquals(m.cellOf(t), buf.current());
+            assertEquals(expected.length - 1, steps);
+        }
+    }
+
+    @Test
+    void nearest_kClosestColorCells_matchAllDistance() {
+        final int DOT = 3;
+        Random r = new Random(19);
+        for (int round = 0; round < 40; round++) {
+            Map m = RandomMaps.randomMap(round, 10, 8, 0.25, round % 2 == 0);
+            for (int i = 0; i < 12; i++) m.setPixel(r.nextInt(10), r.nextInt(8), DOT);
+            Pixel2D s = new Index2D(r.nextInt(10), r.nextInt(8));
+            m.setPixel(s, DOT);   // the start never counts as a hit
+
+            Map2D d = m.allDistance(s, OBS);
+            List<Integer> expected = new ArrayList<>();
+            for (int x = 0; x < 10; x++) {
+                for (int y = 0; y < 8; y++) {
+                    if (m.getPixel(x, y) == DOT && d.getPixel(x, y) > 0) expected.add(d.getPixel(x, y));
+                }
+            }
+            Collections.sort(expected);
+
+            PathBuffer[] out = new PathBuffer[1 + round % 5];
+            for (int i = 0; i < out.length; i++) out[i] = new PathBuffer();
+            int found = m.nearest(s, DOT, OBS, out);
+            assertEquals(Math.min(out.length, expected.size()), found);
+            for (int i = 0; i < out.length; i++) {
+                if (i >= found) {
+                    assertTrue(out[i].isEmpty());
+                    continue;
+                }
+                assertEquals((int) expected.get(i), out[i].length() - 1);
+                assertEquals(m.cellOf(s), out[i].cell(0));
+                assertEquals(DOT, m.getCell(out[i].cell(out[i].length() - 1)));
+                assertPathValid4Neighbors(m, out[i].toPixels(), OBS);
+            }
+        }
+    }
+
+    @Test
+    void shortestPathWeighted_matchesRelaxedDistances() {
+        Random r = new Random(22);
+        for (int round = 0; round < 40; round++) {
+            int w = 3 + r.nextInt(9), h = 3 + r.nextInt(7);
+            Map m = RandomMaps.randomMap(round, w, h, 0.2, round % 2 == 0);
+            Map cost = new Map(w, h, 0);
+            for (int x = 0; x < w; x++) {
+                for (int y = 0; y < h; y++) cost.setPixel(x, y, r.nextInt(4) == 0 ? r.nextInt(30) : 0);
+            }
+            Pixel2D s = new Index2D(r.nextInt(w), r.nextInt(h));
+            Pixel2D t = new Index2D(r.nextInt(w), r.nextInt(h));
+
+            // Bellman-Ford relaxation: entering cell v costs 1 + cost(v)
+            int n = w * h;
+            long[] best = new long[n];
+            Arrays.fill(best, Long.MAX_VALUE);
+            if (m.getPixel(s) != OBS) best[m.cellOf(s)] = 0;
+            for (boolean changed = true; changed; ) {
+                changed = false;
+                for (int c = 0; c < n; c++) {
+                    if (best[c] == Long.MAX_VALUE) continue;
+                    for (int d = 0; d < 4; d++) {
+                        int v = m.step(c, d);
+                        if (v < 0 || m.getCell(v) == OBS) continue;
+                        long nd = best[c] + 1 + cost.getCell(v);
+                        if (nd < best[v]) {
+                            best[v] = nd;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            int expected = (m.getPixel(t) == OBS || best[m.cellOf(t)] == Long.MAX_VALUE) ? -1 : (int) best[m.cellOf(t)];
+
+            PathBuffer path = new PathBuffer();
+            int total = m.shortestPathWeighted(s, t, OBS, cost, path);
+            assertEquals(expected, total);
+            if (total < 0) {
+                assertTrue(path.isEmpty());
+                continue;
+            }
+            assertEquals(m.cellOf(s), path.cell(0));
+            assertEquals(m.cellOf(t), path.cell(path.length() - 1));
+            int sum = 0;
+            for (int i = 1; i < path.length(); i++) sum += 1 + cost.getCell(path.cell(i));
+            assertEquals(total, sum);
+            assertPathValid4Neighbors(m, path.toPixels(), OBS);
+
+            // no cost at all: the plain BFS length
+            Pixel2D[] plain = m.shortestPath(s, t, OBS);
+            assertEquals(plain.length - 1, m.shortestPathWeighted(s, t, OBS, new Map(w, h, 0), path));
+        }
+    }
+
+    @Test
+    void shortestPathWeighted_detoursAroundCostAndRejectsBadFields() {
+        Map m = new Map(5, 3, 0);
+        m.setCyclic(false);
+        Map cost = new Map(5, 3, 0);
+        cost.setPixel(2, 1, 10);
+        PathBuffer path = new PathBuffer();
+        // straight through costs 4 + 10, around costs 6
+        assertEquals(6, m.shortestPathWeighted(new Index2D(0, 1), new Index2D(4, 1), OBS, cost, path));
+        for (int i = 0; i < path.length(); i++) assertNotEquals(m.cellOf(2, 1), path.cell(i));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> m.shortestPathWeighted(new Index2D(0, 0), new Index2D(4, 2), OBS, new Map(4, 3, 0), path));
+        // a known max cost clamps the field instead of scanning it
+        Map high = new Map(5, 3, 0);
+        high.setPixel(2, 1, 1000);
+        assertEquals(6, m.shortestPathWeighted(new Index2D(0, 1), new Index2D(4, 1), OBS, high, 10, path));
+        // clamped to 1, going straight through costs 4 + 1
+        assertEquals(5, m.shortestPathWeighted(new Index2D(0, 1), new Index2D(4, 1), OBS, high, 1, path));
+        assertThrows(IllegalArgumentException.class,
+                () -> m.nearestWeighted(new Index2D(0, 1), 3, OBS, high, Map.MAX_STEP_COST + 1, path));
+        cost.setPixel(0, 0, Map.MAX_STEP_COST + 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> m.shortestPathWeighted(new Index2D(0, 1), new Index2D(4, 1), OBS, cost, path));
+    }
+
+    @Test
+    void version_growsOnEveryChangeOnly() {
+        Map m = new Map(4, 3, 0);
+        long v = m.version();
+        m.setPixel(1, 1, 0);
+        assertEquals(v, m.version());
+        m.setPixel(1, 1, OBS);
+        assertTrue(m.version() > v);
+        v = m.version();
+        m.setCyclic(m.isCyclic());
+        assertEquals(v, m.version());
+        m.setCyclic(!m.isCyclic());
+        assertTrue(m.version() > v);
+        v = m.version();
+        m.fill(new Index2D(0, 0), 2);
+        assertTrue(m.version() > v);
+    }
+
+    @Test
+    void distanceCache_servesCopiesUntilTheMapChanges() {
+        Map m = RandomMaps.randomMap(24, 12, 9, 0.25, true);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(5, 4);
+        m.setPixel(a, 0);
+        m.setPixel(b, 0);
+        Map2D plainA = m.allDistance(a, OBS);
+        SourceDistances plainAB = m.allDistanceLabeled(new Pixel2D[]{a, null, b}, OBS);
+
+        DistanceCache cache = m.enableDistanceCache(2);
+        assertSame(cache, m.distanceCache());
+        assertArrayEquals(plainA.getMap(), m.allDistance(a, OBS).getMap());
+        Map2D hit = m.allDistance(a, OBS);
+        assertArrayEquals(plainA.getMap(), hit.getMap());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // a hit is a copy: changing it does not reach the cache
+        hit.setPixel(3, 3, 77);
+        assertArrayEquals(plainA.getMap(), m.allDistance(a, OBS).getMap());
+
+        // a multi-source field computed without labels still answers a query for them
+        assertArrayEquals(plainAB.getDistances().getMap(), m.allDistance(new Pixel2D[]{a, null, b}, OBS).getMap());
+        SourceDistances labeled = m.allDistanceLabeled(new Pixel2D[]{a, null, b}, OBS);
+        assertArrayEquals(plainAB.getDistances().getMap(), labeled.getDistances().getMap());
+        assertArrayEquals(plainAB.getLabels().getMap(), labeled.getLabels().getMap());
+        assertEquals(2, cache.misses());
+        assertEquals(3, cache.hits());
+
+        // capacity 2: asking for b evicts the least recently used field (a)
+        m.allDistance(b, OBS);
+        assertEquals(2, cache.size());
+        m.allDistance(a, OBS);
+        assertEquals(4, cache.misses());
+
+        // any change makes every cached field stale
+        m.setPixel(11, 8, m.getPixel(11, 8) == OBS ? 0 : OBS);
+        m.allDistance(a, OBS);
+        assertEquals(5, cache.misses());
+        assertEquals(1, cache.size());
+        m.disableDistanceCache();
+        assertNull(m.distanceCache());
+    }
 }
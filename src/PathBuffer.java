@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * A path kept as packed cell ids (x*h+y, see Map.cellOf()) in a reusable int array,
+ * instead of a Pixel2D[] of new objects.
+ * Besides random access it offers a direction view (the DIRS index of every step) and a
+ * cursor for walking the path one step per game tick. The same buffer can be passed to
+ * many queries (e.g. Map.shortestPath(p1, p2, obsColor, buffer)): its array only grows.
+ */
+public class PathBuffer {
+    private int[] _cells = new int[16];
+    private int _length;
+    private int _cursor;
+    private int _h;
+    private PixelTable _pixels;   // of the map the path was found on
+
+    /**
+     * @return the number of cells of the path (0 if empty).
+     */
+    public int length() {
+        return _length;
+    }
+
+    public boolean isEmpty() {
+        return _length == 0;
+    }
+
+    /**
+     * Empties the path.
+     */
+    public void clear() {
+        _length = 0;
+        _cursor = 0;
+    }
+
+    /**
+     * @return the packed id of the i'th cell (0 is the start).
+     */
+    public int cell(int i) {
+        checkIndex(i);
+        return _cells[i];
+    }
+
+    public int getX(int i) {
+        return cell(i) / _h;
+    }
+
+    public int getY(int i) {
+        return cell(i) % _h;
+    }
+
+    /**
+     * @return the direction of the step from cell i to cell i+1, as an index into
+     * Map.DIRS (0 y-1, 1 x-1, 2 y+1, 3 x+1) - wrapping steps included.
+     */
+    public int direction(int i) {
+        checkIndex(i + 1);
+        int a = _cells[i], b = _cells[i + 1];
+        int ax = a / _h, bx = b / _h;
+        // plain steps first: on a side of 2 a plain step also looks like a wrap
+        if (ax == bx) {
+            int dy = b - a;
+            if (dy == 1) return 2;
+            if (dy == -1) return 0;
+            return (dy < 0) ? 2 : 0;   // wrapped from h-1 to 0, or from 0 to h-1
+        }
+        int dx = bx - ax;
+        if (dx == 1) return 3;
+        if (dx == -1) return 1;
+        return (dx < 0) ? 3 : 1;
+    }
+
+    /////////////////////// cursor ///////////////////////
+
+    /**
+     * @return the index of the cursor (0 right after a query).
+     */
+    public int cursor() {
+        return _cursor;
+    }
+
+    /**
+     * @return the packed id of the cell under the cursor.
+     */
+    public int current() {
+        return cell(_cursor);
+    }
+
+    /**
+     * @return true iff the cursor is not on the last cell.
+     */
+    public boolean hasNext() {
+        return _cursor + 1 < _length;
+    }
+
+    /**
+     * Moves the cursor one cell forward.
+     * @return the packed id of the new current cell.
+     */
+    public int next() {
+        if (!hasNext()) throw new IndexOutOfBoundsException("end of path");
+        return _cells[++_cursor];
+    }
+
+    /////////////////////// adapters ///////////////////////
+
+    /**
+     * @return the path as pixels (the shared instances of Map.pixel() of the map the path
+     * was found on), or null if empty.
+     */
+    public Pixel2D[] toPixels() {
+        if (_length == 0) return null;
+        Pixel2D[] ans = new Pixel2D[_length];
+        for (int i = 0; i < _length; i++) ans[i] = _pixels.get(_cells[i]);
+        return ans;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < _length; i++) {
+            if (i > 0) sb.append(" ");
+            sb.append(getX(i)).append(",").append(getY(i));
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Starts a new path of the given length on the board of pixels (the table of the map
+     * it is found on, see Map.pixels()) and returns the array to write its cells into
+     * (indexes 0..length-1). The cursor is set back to the start.
+     */
+    int[] prepare(PixelTable pixels, int length) {
+        if (_cells.length < length) _cells = Arrays.copyOf(_cells, Math.max(length, 2 * _cells.length));
+        _pixels = pixels;
+        _h = pixels.height();
+        _length = length;
+        _cursor = 0;
+        return _cells;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= _length) throw new IndexOutOfBoundsException("index " + i + " of a path of " + _length);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Interned Index2D instances of a w*h board, indexed by packed cell id (x*h+y).
+ * Each Map owns its table (see Map.pixel()), and each entry is created on first request -
+ * so the APIs that must hand out Pixel2D objects (paths, neighbours) return the same
+ * immutable instances again and again instead of allocating new ones. The table goes away
+ * with its map; structures built from a map (paths, junction graphs) keep the table of
+ * the size they were built for.
+ * Entries may be created twice by racing threads, which is harmless (Index2D is immutable).
+ */
+final class PixelTable {
+    private final int _w, _h;
+    private final Index2D[] _pixels;
+
+    PixelTable(int w, int h) {
+        _w = w;
+        _h = h;
+        _pixels = new Index2D[w * h];
+    }
+
+    int height() {
+        return _h;
+    }
+
+    boolean fits(int w, int h) {
+        return _w == w && _h == h;
+    }
+
+    /**
+     * @return the interned pixel of cell (x*h+y).
+     */
+    Index2D get(int cell) {
+        Index2D p = _pixels[cell];
+        if (p == null) {
+            p = new Index2D(cell / _h, cell % _h);
+            _pixels[cell] = p;
+        }
+        return p;
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Random;
+
+/**
+ * Random boards shared by the tests: walls of color OBS scattered over an empty map.
+ */
+final class RandomMaps {
+    static final int OBS = 1;
+
+    private RandomMaps() {
+    }
+
+    /**
+     * @return a w*h map where each cell is a wall (OBS) with probability obsRatio, 0 otherwise.
+     */
+    static Map randomMap(Random r, int w, int h, double obsRatio, boolean cyclic) {
+        Map m = new Map(w, h, 0);
+        m.setCyclic(cyclic);
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                if (r.nextDouble() < obsRatio) m.setPixel(x, y, OBS);
+            }
+        }
+        return m;
+    }
+
+    static Map randomMap(long seed, int w, int h, double obsRatio, boolean cyclic) {
+        return randomMap(new Random(seed), w, h, obsRatio, cyclic);
+    }
+
+    /**
+     * @return a w*h map where each cell holds a uniform color in [0, colors).
+     */
+    static Map randomColors(Random r, int w, int h, int colors, boolean cyclic) {
+        Map m = new Map(w, h, 0);
+        m.setCyclic(cyclic);
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) m.setPixel(x, y, r.nextInt(colors));
+        }
+        return m;
+    }
+
+    /**
+     * Paints color on each non-wall cell of m with probability ratio (e.g. dots).
+     */
+    static void scatter(Random r, Map m, int color, double ratio) {
+        for (int x = 0; x < m.getWidth(); x++) {
+            for (int y = 0; y < m.getHeight(); y++) {
+                if (m.getPixel(x, y) != OBS && r.nextDouble() < ratio) m.setPixel(x, y, color);
+            }
+        }
+    }
+}
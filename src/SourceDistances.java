@@ -0,0 +1,29 @@
+/**
+ * Result of a multi-source BFS (see Map.allDistanceLabeled()): the distance of every cell
+ * to the closest source, and which source that is.
+ */
+public class SourceDistances {
+    private final Map _distances;
+    private final Map _labels;
+
+    SourceDistances(Map distances, Map labels) {
+        _distances = distances;
+        _labels = labels;
+    }
+
+    /**
+     * @return the distance of every cell to the closest source, with the conventions of
+     * Map.allDistance(Pixel2D[], int): obstacles keep their color, unreachable cells are -1.
+     */
+    public Map2D getDistances() {
+        return _distances;
+    }
+
+    /**
+     * @return a map holding, for every cell, the index (in the sources array) of the source
+     * which reached it first, or -1 if no source did.
+     */
+    public Map2D getLabels() {
+        return _labels;
+    }
+}
@@ -37,6 +37,9 @@ public class MyPacmanGame {
     private int pacX, pacY;
     private int score;
 
+    /** Number of DOT/POWER cells left, updated whenever one is eaten */
+    private int dotsLeft;
+
     /** Ghosts list + power mode timer */
     private final List<Ghost> ghosts = new ArrayList<>();
     private int powerTicks;
@@ -58,6 +61,7 @@ public class MyPacmanGame {
         this.w = loadedBoard.length;
         this.h = loadedBoard[0].length;
         this.board = deepCopy(loadedBoard);
+        this.dotsLeft = countDots();
 
         int[] p = findFirstWalkable();
         this.pacX = p[0];
@@ -93,11 +97,19 @@ public class MyPacmanGame {
     }
 
     /**
-     * Counts how many dots/power pellets are still on the board.
+     * Returns how many dots/power pellets are still on the board.
+     * The count is kept up to date by eatAtPacman(), so this is O(1).
      *
      * @return number of remaining DOT/POWER cells
      */
     public int remainingDots() {
+        return dotsLeft;
+    }
+
+    /**
+     * Counts the dots/power pellets on the board (full scan, done once at start).
+     */
+    private int countDots() {
         int cnt = 0;
         for (int x = 0; x < w; x++) {
             for (int y = 0; y < h; y++) {
@@ -157,9 +169,11 @@ public class MyPacmanGame {
         if (cell == DOT) {
             score += 10;
             board[pacX][pacY] = EMPTY;
+            dotsLeft--;
         } else if (cell == POWER) {
             score += 50;
             board[pacX][pacY] = EMPTY;
+            dotsLeft--;
             powerTicks = 80;
         }
     }